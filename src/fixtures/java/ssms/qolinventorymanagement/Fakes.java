@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.SettingsAPI;
+import com.fs.starfarer.api.campaign.CampaignFleetAPI;
+import com.fs.starfarer.api.campaign.CampaignUIAPI;
+import com.fs.starfarer.api.campaign.CargoAPI;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
+import com.fs.starfarer.api.campaign.FactionAPI;
+import com.fs.starfarer.api.campaign.SectorAPI;
+import com.fs.starfarer.api.campaign.SectorEntityToken;
+import com.fs.starfarer.api.campaign.SpecialItemData;
+import com.fs.starfarer.api.campaign.SpecialItemSpecAPI;
+import com.fs.starfarer.api.campaign.SubmarketPlugin;
+import com.fs.starfarer.api.campaign.econ.MarketAPI;
+import com.fs.starfarer.api.campaign.econ.SubmarketAPI;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory stand-ins for the game objects touched while docking. The API interfaces are large so the fakes are
+ * proxies that answer the methods the mod calls and return null, zero or false for everything else.
+ *
+ * @author Malte Schulze
+ */
+public class Fakes {
+    protected abstract static class Fake implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch ( method.getName() ) {
+                case "hashCode": if ( args == null ) return System.identityHashCode(proxy); break;
+                case "equals": if ( args != null && args.length == 1 ) return proxy == args[0]; break;
+                case "toString": if ( args == null ) return getClass().getSimpleName(); break;
+            }
+            Object result = answer(method.getName(), args);
+            if ( result == null && method.getReturnType().isPrimitive() ) return zero(method.getReturnType());
+            return result;
+        }
+
+        protected abstract Object answer(String method, Object[] args);
+
+        private static Object zero(Class<?> type) {
+            if ( type == boolean.class ) return false;
+            if ( type == float.class ) return 0f;
+            if ( type == double.class ) return 0d;
+            if ( type == long.class ) return 0L;
+            if ( type == int.class ) return 0;
+            if ( type == short.class ) return (short)0;
+            if ( type == byte.class ) return (byte)0;
+            if ( type == char.class ) return (char)0;
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static <T> T proxy(Class<T> type, Fake fake) {
+        return (T) Proxy.newProxyInstance(Fakes.class.getClassLoader(), new Class<?>[]{type}, fake);
+    }
+
+    public static CargoStackAPI stack(final CargoAPI.CargoItemType type, final Object data, final float size) {
+        return proxy(CargoStackAPI.class, new Fake() {
+            @Override
+            protected Object answer(String method, Object[] args) {
+                switch ( method ) {
+                    case "getType": return type;
+                    case "getData": return data;
+                    case "getSize": return size;
+                    case "isWeaponStack": return type == CargoAPI.CargoItemType.WEAPONS;
+                    case "isSpecialStack": return type == CargoAPI.CargoItemType.SPECIAL;
+                    case "isCommodityStack": return type == CargoAPI.CargoItemType.RESOURCES;
+                    case "getSpecialDataIfSpecial": return type == CargoAPI.CargoItemType.SPECIAL ? data : null;
+                    case "getCommodityId": return type == CargoAPI.CargoItemType.RESOURCES ? data : null;
+                    default: return null;
+                }
+            }
+        });
+    }
+
+    public static CargoStackAPI weapon(String weaponId, float size) {
+        return stack(CargoAPI.CargoItemType.WEAPONS, weaponId, size);
+    }
+
+    public static CargoStackAPI special(String specialId, String data, float size) {
+        return stack(CargoAPI.CargoItemType.SPECIAL, new SpecialItemData(specialId, data), size);
+    }
+
+    /**
+     * A cargo that keeps its stacks in a list. Weapon counts are aggregated on every call like the game does, removing 
+     * items takes them from the first matching stacks.
+     */
+    public static CargoAPI cargo(final List<CargoStackAPI> stacks) {
+        return proxy(CargoAPI.class, new Fake() {
+            @Override
+            protected Object answer(String method, Object[] args) {
+                switch ( method ) {
+                    case "getStacksCopy": return new ArrayList<>(stacks);
+                    case "createCopy": return cargo(new ArrayList<>(stacks));
+                    case "isEmpty": return stacks.isEmpty();
+                    case "getWeapons": {
+                        Map<String,Integer> counts = new LinkedHashMap<>();
+                        for ( CargoStackAPI stack : stacks ) {
+                            if ( !stack.isWeaponStack() ) continue;
+                            String weaponId = (String) stack.getData();
+                            Integer count = counts.get(weaponId);
+                            counts.put(weaponId, (count != null ? count : 0) + (int)stack.getSize());
+                        }
+                        List<CargoAPI.CargoItemQuantity<String>> weapons = new ArrayList<>();
+                        for ( Map.Entry<String,Integer> entry : counts.entrySet() ) {
+                            weapons.add(new CargoAPI.CargoItemQuantity<>(entry.getKey(), entry.getValue()));
+                        }
+                        return weapons;
+                    }
+                    case "addItems": stacks.add(stack((CargoAPI.CargoItemType)args[0], args[1], (Float)args[2])); return null;
+                    case "addAll": stacks.addAll(((CargoAPI)args[0]).getStacksCopy()); return null;
+                    case "removeAll": remove(stacks, ((CargoAPI)args[0]).getStacksCopy()); return null;
+                    default: return null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Takes the removed quantities from the first matching stacks in a single pass.
+     */
+    private static void remove(List<CargoStackAPI> stacks, List<CargoStackAPI> removed) {
+        Map<List<Object>,float[]> quantities = new HashMap<>();
+        for ( CargoStackAPI stack : removed ) {
+            List<Object> key = Arrays.asList(stack.getType(), stack.getData());
+            float[] quantity = quantities.get(key);
+            if ( quantity == null ) quantities.put(key, quantity = new float[1]);
+            quantity[0] += stack.getSize();
+        }
+        List<CargoStackAPI> kept = new ArrayList<>(stacks.size());
+        for ( CargoStackAPI stack : stacks ) {
+            float[] quantity = quantities.get(Arrays.asList(stack.getType(), stack.getData()));
+            if ( quantity == null || quantity[0] <= 0f ) {
+                kept.add(stack);
+                continue;
+            }
+            float taken = Math.min(quantity[0], stack.getSize());
+            quantity[0] -= taken;
+            if ( taken < stack.getSize() ) kept.add(stack(stack.getType(), stack.getData(), stack.getSize() - taken));
+        }
+        stacks.clear();
+        stacks.addAll(kept);
+    }
+
+    public static SubmarketAPI submarket(String specId, CargoAPI cargo, MarketAPI market) {
+        return submarket(specId, cargo, market, false);
+    }
+
+    /**
+     * A submarket whose plugin does nothing when the stock would be updated.
+     * @param illegalToSell If true the player may not sell anything there.
+     */
+    public static SubmarketAPI submarket(final String specId, final CargoAPI cargo, final MarketAPI market, final boolean illegalToSell) {
+        final SubmarketPlugin plugin = proxy(SubmarketPlugin.class, new Fake() {
+            @Override
+            protected Object answer(String method, Object[] args) {
+                return null;
+            }
+        });
+        return proxy(SubmarketAPI.class, new Fake() {
+            @Override
+            protected Object answer(String method, Object[] args) {
+                switch ( method ) {
+                    case "getSpecId": return specId;
+                    case "getCargo": return cargo;
+                    case "getMarket": return market;
+                    case "getPlugin": return plugin;
+                    case "isIllegalOnSubmarket": return illegalToSell && args[1] == SubmarketPlugin.TransferAction.PLAYER_SELL;
+                    default: return null;
+                }
+            }
+        });
+    }
+
+    /**
+     * A market whose submarkets are added after creation since submarkets refer back to their market.
+     */
+    public static MarketAPI market(final String id, final Map<String,SubmarketAPI> submarkets) {
+        return proxy(MarketAPI.class, new Fake() {
+            @Override
+            protected Object answer(String method, Object[] args) {
+                switch ( method ) {
+                    case "getId": return id;
+                    case "getSubmarket": return submarkets.get((String)args[0]);
+                    case "hasSubmarket": return submarkets.containsKey((String)args[0]);
+                    case "getSubmarketsCopy": return new ArrayList<>(submarkets.values());
+                    default: return null;
+                }
+            }
+        });
+    }
+
+    /**
+     * An entity without a faction, which is how abandoned stations qualify as storage.
+     */
+    public static SectorEntityToken entity(final String id, final MarketAPI market) {
+        return proxy(SectorEntityToken.class, new Fake() {
+            @Override
+            protected Object answer(String method, Object[] args) {
+                switch ( method ) {
+                    case "getId": return id;
+                    case "getName": return id;
+                    case "getMarket": return market;
+                    default: return null;
+                }
+            }
+        });
+    }
+
+    public static FactionAPI faction(final String id, final Set<String> knownWeapons) {
+        return proxy(FactionAPI.class, new Fake() {
+            @Override
+            protected Object answer(String method, Object[] args) {
+                switch ( method ) {
+                    case "getId": return id;
+                    case "isPlayerFaction": return "player".equals(id);
+                    case "knowsWeapon": return knownWeapons.contains((String)args[0]);
+                    case "getKnownWeapons": return knownWeapons;
+                    default: return null;
+                }
+            }
+        });
+    }
+
+    /**
+     * A market with a storage and the given fleet cargo for the player, installed as the running sector.
+     * @return The entity to dock at.
+     */
+    public static SectorEntityToken installDock(CargoAPI fleetCargo, CargoAPI storageCargo, FactionAPI playerFaction) {
+        Map<String,SubmarketAPI> submarkets = new HashMap<>();
+        MarketAPI market = market("bench_market", submarkets);
+        submarkets.put("storage", submarket("storage", storageCargo, market));
+        installSector(fleetCargo, playerFaction);
+        return entity("bench_station", market);
+    }
+
+    /**
+     * A sector with the player fleet and faction. Messages to the player are dropped.
+     */
+    public static void installSector(final CargoAPI fleetCargo, final FactionAPI playerFaction) {
+        final CampaignUIAPI ui = proxy(CampaignUIAPI.class, new Fake() {
+            @Override
+            protected Object answer(String method, Object[] args) {
+                return null;
+            }
+        });
+        final CampaignFleetAPI fleet = proxy(CampaignFleetAPI.class, new Fake() {
+            @Override
+            protected Object answer(String method, Object[] args) {
+                return "getCargo".equals(method) ? fleetCargo : null;
+            }
+        });
+        Global.setSector(proxy(SectorAPI.class, new Fake() {
+            @Override
+            protected Object answer(String method, Object[] args) {
+                switch ( method ) {
+                    case "getPlayerFleet": return fleet;
+                    case "getPlayerFaction": return playerFaction;
+                    case "getCampaignUI": return ui;
+                    default: return null;
+                }
+            }
+        }));
+    }
+
+    /**
+     * Installs settings that only know the given special items, each tagged with the given tag.
+     */
+    public static void installSettings(final List<String> specialIds, final String tag) {
+        final List<SpecialItemSpecAPI> specs = new ArrayList<>();
+        for ( final String specialId : specialIds ) {
+            specs.add(proxy(SpecialItemSpecAPI.class, new Fake() {
+                @Override
+                protected Object answer(String method, Object[] args) {
+                    switch ( method ) {
+                        case "getId": return specialId;
+                        case "hasTag": return tag.equals(args[0]);
+                        default: return null;
+                    }
+                }
+            }));
+        }
+        Global.setSettings(proxy(SettingsAPI.class, new Fake() {
+            @Override
+            protected Object answer(String method, Object[] args) {
+                return "getAllSpecialItemSpecs".equals(method) ? specs : null;
+            }
+        }));
+    }
+}
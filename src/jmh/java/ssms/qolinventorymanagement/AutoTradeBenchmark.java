@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the decision part of auto trade with a reused planner. Offers are spread over the venues the trade mode opens up, in sneak mode 
+ * there is no secondary market.
+ *
+ * @author Malte Schulze
+ */
+@State(Scope.Benchmark)
+public class AutoTradeBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int stackCount;
+    @Param({"1", "100", "2000"})
+    public int ruleCount;
+    @Param({"OPEN", "SNEAK"})
+    public String tradeMode;
+    
+    protected TradeSnapshot snapshot;
+    protected final TradePlanner planner = new TradePlanner();
+    
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        int[] venues = "SNEAK".equals(tradeMode) ? 
+                new int[]{TradeSnapshot.STOCKPILE, TradeSnapshot.STORAGE, TradeSnapshot.PRIMARY} : 
+                new int[]{TradeSnapshot.STOCKPILE, TradeSnapshot.STORAGE, TradeSnapshot.PRIMARY, TradeSnapshot.SECONDARY};
+        int sellableAt = 0;
+        for ( int venue : venues ) {
+            if ( venue != TradeSnapshot.STOCKPILE ) sellableAt |= 1 << venue;
+        }
+        //a tenth of the stacks are in the fleet, the rest is offered on the markets
+        int distinctItems = Math.max(ruleCount, stackCount / 10);
+        snapshot = new TradeSnapshot();
+        snapshot.reset(true);
+        for ( int i = 0; i < ruleCount; i++ ) {
+            snapshot.addRule("item_"+i, random.nextInt(100), random.nextInt(1000));
+        }
+        for ( int i = 0; i < stackCount / 10 + 1; i++ ) {
+            snapshot.addFleetItem(snapshot.item("item_"+(i % distinctItems)), random.nextInt(100), i % 10 == 0, sellableAt, null);
+        }
+        snapshot.markShortages();
+        for ( int i = 0; i < stackCount; i++ ) {
+            int venue = venues[random.nextInt(venues.length)];
+            float price = venue == TradeSnapshot.STORAGE ? 0f : random.nextInt(1000);
+            snapshot.addOffer(snapshot.item("item_"+random.nextInt(distinctItems)), venue, 1+random.nextInt(50), price, null);
+        }
+    }
+    
+    @Benchmark
+    public TradePlan plan() {
+        return planner.plan(snapshot);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.campaign.CampaignUIAPI;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
+import com.fs.starfarer.api.campaign.SectorEntityToken;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ssms.qol.util.UtilItems;
+
+/**
+ * Measures a whole dock through the pipeline of the {@link CampaignPlugin}, from refreshing the submarkets to 
+ * recording the dock. The market is weapon storage and safe storage at once and auto trade takes weapons it has 
+ * rules for out of storage. Every tenth fleet stack is a blueprint. A first dock starts each invocation from the 
+ * original cargos, a repeated dock finds nothing changed since the dock before it.
+ *
+ * @author Malte Schulze
+ */
+@State(Scope.Benchmark)
+public class DockBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int stackCount;
+    @Param({"false", "true"})
+    public boolean repeated;
+    
+    protected final List<CargoStackAPI> fleet = new ArrayList<>();
+    protected final List<CargoStackAPI> storage = new ArrayList<>();
+    protected List<CargoStackAPI> originalFleet;
+    protected List<CargoStackAPI> originalStorage;
+    protected CampaignPlugin plugin;
+    protected SectorEntityToken target;
+    
+    @Setup
+    public void setup() {
+        Fakes.installSettings(Arrays.asList("weapon_bp", "fighter_bp", "ship_bp"), "single_bp");
+        Random random = new Random(42);
+        int distinctWeapons = Math.max(1, stackCount / 4);
+        Set<String> knownWeapons = new HashSet<>();
+        for ( int i = 0; i < stackCount; i++ ) {
+            String weaponId = "weapon_"+random.nextInt(distinctWeapons);
+            if ( random.nextBoolean() ) knownWeapons.add(weaponId);
+            if ( i % 2 == 0 ) storage.add(Fakes.weapon(weaponId, 1+random.nextInt(20)));
+            else if ( i % 10 == 1 ) fleet.add(Fakes.special("weapon_bp", weaponId, 1));
+            else fleet.add(Fakes.weapon(weaponId, 1+random.nextInt(20)));
+        }
+        originalFleet = new ArrayList<>(fleet);
+        originalStorage = new ArrayList<>(storage);
+        target = Fakes.installDock(Fakes.cargo(fleet), Fakes.cargo(storage), Fakes.faction("player", knownWeapons));
+        
+        plugin = new CampaignPlugin();
+        plugin.weaponStorage = new WeaponStorage();
+        plugin.weaponStorage.entityIds = new ArrayList<>(Collections.singletonList(target.getId()));
+        plugin.weaponStorage.threshold = 10;
+        plugin.safeStorage = new SafeStorage();
+        plugin.safeStorage.entityIds = new ArrayList<>(Collections.singletonList(target.getId()));
+        plugin.safeStorage.itemsToStore = new ArrayList<>();
+        plugin.safeStorage.storeAllRecipes = true;
+        //demands above anything the fleet holds so the rules only take weapons out of storage, which is free
+        plugin.autoTrade = new AutoTrade();
+        plugin.autoTrade.rules = new ArrayList<>();
+        for ( int i = 0; i < distinctWeapons; i += 50 ) {
+            AutoTrade.ItemTradeRule rule = new AutoTrade.ItemTradeRule();
+            rule.itemId = UtilItems.getInstance().getItemId(Fakes.weapon("weapon_"+i, 1)).uniqueId;
+            rule.demand = 1000;
+            plugin.autoTrade.rules.add(rule);
+        }
+        if ( repeated ) dock();
+    }
+    
+    @Setup(Level.Invocation)
+    public void reset() {
+        if ( repeated ) return;
+        fleet.clear();
+        fleet.addAll(originalFleet);
+        storage.clear();
+        storage.addAll(originalStorage);
+        plugin.getDockRecords().clear();
+    }
+    
+    @Benchmark
+    public void dock() {
+        plugin.dock(target, CampaignUIAPI.CoreUITradeMode.OPEN, null);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.campaign.CampaignUIAPI;
+import com.fs.starfarer.api.campaign.CargoAPI;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
+import com.fs.starfarer.api.campaign.SectorEntityToken;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures picking the recipes that go into safe storage. Every tenth fleet stack is a blueprint, the rest are 
+ * weapons that have to be rejected.
+ *
+ * @author Malte Schulze
+ */
+@State(Scope.Benchmark)
+public class SafeStorageBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int stackCount;
+    
+    protected SafeStorage safeStorage;
+    protected StorageRegistry registry;
+    protected DockSnapshot dock;
+    
+    @Setup
+    public void setup() {
+        Fakes.installSettings(Arrays.asList("weapon_bp", "fighter_bp", "ship_bp"), "single_bp");
+        Random random = new Random(42);
+        List<CargoStackAPI> fleet = new ArrayList<>();
+        for ( int i = 0; i < stackCount; i++ ) {
+            if ( i % 10 == 0 ) fleet.add(Fakes.special("weapon_bp", "weapon_"+random.nextInt(500), 1));
+            else fleet.add(Fakes.weapon("weapon_"+random.nextInt(500), 1+random.nextInt(20)));
+        }
+        CargoAPI fleetCargo = Fakes.cargo(fleet);
+        SectorEntityToken target = Fakes.installDock(fleetCargo, Fakes.cargo(new ArrayList<CargoStackAPI>()), 
+                Fakes.faction("player", new HashSet<String>()));
+        
+        safeStorage = new SafeStorage();
+        safeStorage.entityIds = new ArrayList<>(Collections.singletonList(target.getId()));
+        safeStorage.itemsToStore = new ArrayList<>();
+        safeStorage.storeAllRecipes = true;
+        registry = new StorageRegistry();
+        dock = new DockSnapshot(target, CampaignUIAPI.CoreUITradeMode.OPEN, false, new DockMetrics());
+    }
+    
+    @Benchmark
+    public CargoAPI planExchange() {
+        return safeStorage.planExchange(dock, registry);
+    }
+}
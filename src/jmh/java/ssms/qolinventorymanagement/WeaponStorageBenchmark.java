@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.campaign.CampaignUIAPI;
+import com.fs.starfarer.api.campaign.CargoAPI;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
+import com.fs.starfarer.api.campaign.SectorEntityToken;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures deciding which weapons move between fleet and storage. The stacks are split evenly between both cargos 
+ * and half of the weapons are known.
+ *
+ * @author Malte Schulze
+ */
+@State(Scope.Benchmark)
+public class WeaponStorageBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int stackCount;
+    
+    protected WeaponStorage weaponStorage;
+    protected StorageRegistry registry;
+    protected DockSnapshot dock;
+    
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        int distinctWeapons = Math.max(1, stackCount / 4);
+        List<CargoStackAPI> fleet = new ArrayList<>();
+        List<CargoStackAPI> storage = new ArrayList<>();
+        Set<String> knownWeapons = new HashSet<>();
+        for ( int i = 0; i < stackCount; i++ ) {
+            String weaponId = "weapon_"+random.nextInt(distinctWeapons);
+            if ( random.nextBoolean() ) knownWeapons.add(weaponId);
+            (i % 2 == 0 ? fleet : storage).add(Fakes.weapon(weaponId, 1+random.nextInt(20)));
+        }
+        CargoAPI fleetCargo = Fakes.cargo(fleet);
+        SectorEntityToken target = Fakes.installDock(fleetCargo, Fakes.cargo(storage), Fakes.faction("player", knownWeapons));
+        
+        weaponStorage = new WeaponStorage();
+        weaponStorage.entityIds = new ArrayList<>(Collections.singletonList(target.getId()));
+        weaponStorage.threshold = 10;
+        registry = new StorageRegistry();
+        dock = new DockSnapshot(target, CampaignUIAPI.CoreUITradeMode.OPEN, false, new DockMetrics());
+    }
+    
+    @Benchmark
+    public Map<String,Integer> planExchange() {
+        return weaponStorage.planExchange(dock, registry);
+    }
+}
@@ -18,25 +18,21 @@
 package ssms.qolinventorymanagement;
 
 import com.fs.starfarer.api.Global;
-import com.fs.starfarer.api.campaign.CampaignUIAPI;
 import com.fs.starfarer.api.campaign.CargoAPI;
 import com.fs.starfarer.api.campaign.CargoStackAPI;
-import com.fs.starfarer.api.campaign.FactionAPI;
 import com.fs.starfarer.api.campaign.PlayerMarketTransaction;
-import com.fs.starfarer.api.campaign.SectorEntityToken;
 import com.fs.starfarer.api.campaign.SubmarketPlugin;
-import com.fs.starfarer.api.campaign.econ.MarketAPI;
 import com.fs.starfarer.api.campaign.econ.SubmarketAPI;
-import com.fs.starfarer.api.impl.campaign.submarkets.LocalResourcesSubmarketPlugin;
 import com.fs.starfarer.campaign.fleet.CargoData;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import org.apache.log4j.Level;
-import ssms.qol.util.UtilItems;
+import org.apache.log4j.Logger;
 import ssms.qol.util.UtilItems.ItemId;
 import ssms.qol.util.UtilTrade;
 
@@ -46,237 +42,314 @@ import ssms.qol.util.UtilTrade;
  */
 public class AutoTrade implements Serializable {
     private static final long serialVersionUID = 8084276252099935477L;
-    //private final int version = 1;
     
     static public class ItemTradeRule implements Serializable {
         private static final long serialVersionUID = -402053265894494692L;
-        //private final int version = 1;
         
         public String itemId;
         public int demand;
         public float minSellPrice, maxBuyPrice;
         
-        /*private void writeObject(java.io.ObjectOutputStream out) throws IOException {
-            out.writeInt(version);
-            out.writeObject(itemId);
-            out.writeInt(demand);
-            out.writeFloat(minSellPrice);
-            out.writeFloat(maxBuyPrice);
-        }
-
-        private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
-            int storedVersion = in.readInt();
-            itemId = (String) in.readObject();
-            demand = in.readInt();
-            minSellPrice = in.readFloat();
-            maxBuyPrice = in.readFloat();
-        }
-
-        private void readObjectNoData() throws ObjectStreamException {
-            itemId = null;
-            demand = 0;
-            minSellPrice = 1000000;
-            maxBuyPrice = 0;
-        }*/
-    }
-    protected class AvailableGoods implements Comparable<AvailableGoods> {
-        public CargoAPI.CargoItemType type;
-        public Object itemData;
-        public float quantity;
-        public float price;
-        public PlayerMarketTransaction transaction;
-
-        public AvailableGoods(float quantity, float price, PlayerMarketTransaction transaction, CargoAPI.CargoItemType type, Object itemData) {
-            this.quantity = quantity;
-            this.price = price;
-            this.transaction = transaction;
-            this.type = type;
-            this.itemData = itemData;
-        }
-
-        @Override
-        public int compareTo(AvailableGoods o) {
-            return Float.compare(price, o.price);
+        public int hashConfiguration() {
+            return Objects.hash(itemId, demand, minSellPrice, maxBuyPrice);
         }
     }
     protected List<ItemTradeRule> rules;
     protected boolean sellKnownWeapons;
+    /**
+     * Name of the {@link TemplateLibrary} template whose rules apply in addition to the own rules and the version of 
+     * it that was last applied.
+     */
+    protected String template;
+    protected int templateVersion;
+    /**
+     * Narrows the items offered for rules, only kept for the session.
+     */
+    protected transient String itemFilter;
+    protected transient TradeSnapshot snapshot;
+    protected transient TradePlanner planner;
+    protected transient List<ItemTradeRule> mergedRules;
+    protected transient TemplateLibrary.Template mergedTemplate;
+    protected transient List<ItemTradeRule> mergedOwnRules;
+    protected transient int mergedOwnRulesSize;
     
-    public void trade(SectorEntityToken interactionTarget, CampaignUIAPI.CoreUITradeMode tradeMode) {
-        UtilItems items = UtilItems.getInstance();
-        UtilTrade trade = UtilTrade.getInstance();
-        MarketAPI market = interactionTarget.getMarket();
-        SubmarketAPI submarketPrimary = null, submarketSecondary = null, stockpile = market.getSubmarket("local_resources"), storage = market.getSubmarket("storage");
-        
-        if ( tradeMode == CampaignUIAPI.CoreUITradeMode.OPEN ) {
-            submarketPrimary = market.getSubmarket("open_market");
-            submarketSecondary = market.getSubmarket("generic_military");
-        } else if ( tradeMode == CampaignUIAPI.CoreUITradeMode.SNEAK ) {
-            submarketPrimary = market.getSubmarket("black_market");
-            submarketSecondary = null;
-        }
-        if ( submarketPrimary != null ) submarketPrimary.getPlugin().updateCargoPrePlayerInteraction();
-        if ( submarketSecondary != null ) submarketSecondary.getPlugin().updateCargoPrePlayerInteraction();
-        if ( stockpile != null ) stockpile.getPlugin().updateCargoPrePlayerInteraction();
-        if ( storage != null ) storage.getPlugin().updateCargoPrePlayerInteraction();
-        CargoAPI fleetCargo = Global.getSector().getPlayerFleet().getCargo();
-        
-        if ( sellKnownWeapons ) {
-            PlayerMarketTransaction transactionPrimary = submarketPrimary != null ? new PlayerMarketTransaction(submarketPrimary.getMarket(), submarketPrimary, tradeMode) : null;
-            PlayerMarketTransaction transactionSecondary = submarketSecondary != null ? new PlayerMarketTransaction(submarketSecondary.getMarket(), submarketSecondary, tradeMode) : null;
-            if ( transactionPrimary != null || transactionSecondary != null ) {
-                List<CargoStackAPI> stacks = fleetCargo.getStacksCopy();
-                FactionAPI pf = Global.getSector().getPlayerFaction();
-                for ( CargoStackAPI stack : stacks ) {
-                    ItemId itemId = items.getItemId(stack);
-                    if ( stack.isWeaponStack() && stack.getSize() > 0 && pf.knowsWeapon(itemId.id) ) {
-                        int countToSell = (int)stack.getSize();
-                        //do not sell weapons below their demand
-                        if ( rules != null ) {
-                            for ( ItemTradeRule rule : rules ) {
-                                if ( rule.itemId != null && rule.itemId.equals(itemId.uniqueId) ) {
-                                    countToSell = Math.max(countToSell-rule.demand, 0);
-                                    break;
-                                }
-                            }
-                        }
-                        if ( transactionPrimary != null && transactionPrimary.getSubmarket().isIllegalOnSubmarket(stack, SubmarketPlugin.TransferAction.PLAYER_SELL) ) 
-                            transactionPrimary.getSold().addWeapons(itemId.id, countToSell);
-                        else if ( transactionSecondary != null && transactionSecondary.getSubmarket().isIllegalOnSubmarket(stack, SubmarketPlugin.TransferAction.PLAYER_SELL) ) 
-                            transactionSecondary.getSold().addWeapons(itemId.id, countToSell);
-                    }
-                }
-                trade.doTransaction(transactionPrimary,fleetCargo);
-                trade.doTransaction(transactionSecondary,fleetCargo);
+    /**
+     * Sets the own rules, also needed after the list was edited in place.
+     */
+    public void setRules(List<ItemTradeRule> rules) {
+        this.rules = rules;
+        rulesChanged();
+    }
+    
+    /**
+     * Must be called after the item of an own rule changed, the rules merged with the template are rebuilt on next 
+     * use.
+     */
+    public void rulesChanged() {
+        mergedRules = null;
+    }
+    
+    public int hashConfiguration() {
+        int hash = sellKnownWeapons ? 1 : 0;
+        List<ItemTradeRule> rules = getRules();
+        if ( rules != null ) {
+            for ( ItemTradeRule rule : rules ) {
+                hash = 31 * hash + rule.hashConfiguration();
             }
         }
+        return hash;
+    }
+    
+    /**
+     * @return True if any rule is active or known weapons are sold, without reading any cargo.
+     */
+    public boolean isApplicable() {
+        List<ItemTradeRule> rules = getRules();
+        return (rules != null && !rules.isEmpty()) || sellKnownWeapons;
+    }
+    
+    /**
+     * Decides what to buy and sell without changing any cargo.
+     * @return The plan or null if there is nothing to trade.
+     */
+    public TradePlan plan(DockSnapshot dock, PriceCache prices) {
+        long start = dock.metrics.start();
+        TradeSnapshot snapshot = snapshot(dock, prices);
+        dock.metrics.stop(DockMetrics.OFFERS, start);
+        return snapshot != null ? getPlanner().plan(snapshot) : null;
+    }
+    
+    /**
+     * Collects everything the {@link TradePlanner} needs from the cargos of the dock. Only fleet items with a rule or 
+     * that are known weapons for sale are included and only items that are short in the fleet are priced. The 
+     * snapshot is reused by the next call.
+     * @return The snapshot or null if there is nothing to trade.
+     */
+    public TradeSnapshot snapshot(DockSnapshot dock, PriceCache prices) {
+        List<ItemTradeRule> rules = getRules();
+        if ( rules == null && !sellKnownWeapons ) return null;
+        ItemIdCache items = dock.getItemIds();
+        SubmarketAPI[] venues = getVenues(dock);
+        KnownWeapons knownWeapons = dock.getKnownWeapons();
+        TradeSnapshot snapshot = getSnapshot();
+        snapshot.reset(sellKnownWeapons);
         
         if ( rules != null ) {
-            PlayerMarketTransaction transactionPrimary = submarketPrimary != null ? new PlayerMarketTransaction(submarketPrimary.getMarket(), submarketPrimary, tradeMode) : null;
-            PlayerMarketTransaction transactionSecondary = submarketSecondary != null ? new PlayerMarketTransaction(submarketSecondary.getMarket(), submarketSecondary, tradeMode) : null;
-            PlayerMarketTransaction transactionStockpile = stockpile != null ? new PlayerMarketTransaction(stockpile.getMarket(), stockpile, tradeMode) : null;
-            PlayerMarketTransaction transactionStorage = storage != null ? new PlayerMarketTransaction(storage.getMarket(), storage, tradeMode) : null;
-            
-            Map<String,List<AvailableGoods>> goods = new HashMap<>();
-            if ( stockpile != null && transactionStockpile != null ) {
-                LocalResourcesSubmarketPlugin plugin = ((LocalResourcesSubmarketPlugin)stockpile.getPlugin());
-                List<CargoStackAPI> stacks = stockpile.getCargo().getStacksCopy();
-                //free stuff at the stockpile
-                for ( CargoStackAPI stack : plugin.getLeft().getStacksCopy() ) {
-                    if ( stockpile.isIllegalOnSubmarket(stack, SubmarketPlugin.TransferAction.PLAYER_BUY) ) continue;
-                    addToGoods(goods,items.getItemId(stack).uniqueId,stack.getSize(),0f,transactionStockpile,stack.getType(),stack.getData());
-                }
-                for ( CargoStackAPI stack : stacks ) {
-                    if ( stockpile.isIllegalOnSubmarket(stack, SubmarketPlugin.TransferAction.PLAYER_BUY) ) continue;
-                    if ( stack.isCommodityStack() )
-                        addToGoods(goods,items.getItemId(stack).uniqueId,stack.getSize(),LocalResourcesSubmarketPlugin.getStockpilingUnitPrice(stack.getResourceIfResource(), false),
-                                transactionStockpile,stack.getType(),stack.getData());
-                    else addToGoods(goods,items.getItemId(stack).uniqueId,stack.getSize(),stack.getBaseValuePerUnit(),transactionStockpile,stack.getType(),stack.getData());
-                }
-            }
-            if ( storage != null && transactionStorage != null ) {
-                List<CargoStackAPI> stacks = storage.getCargo().getStacksCopy();
-                for ( CargoStackAPI stack : stacks ) {
-                    if ( storage.isIllegalOnSubmarket(stack, SubmarketPlugin.TransferAction.PLAYER_BUY) ) continue;
-                    addToGoods(goods,items.getItemId(stack).uniqueId,stack.getSize(),0f,transactionStorage,stack.getType(),stack.getData());
-                }
+            for ( ItemTradeRule rule : rules ) {
+                if ( rule.itemId != null ) snapshot.addRule(rule.itemId, rule.demand, rule.maxBuyPrice);
             }
-            if ( submarketPrimary != null && transactionPrimary != null ) {
-                List<CargoStackAPI> stacks = submarketPrimary.getCargo().getStacksCopy();
-                for ( CargoStackAPI stack : stacks ) {
-                    if ( submarketPrimary.isIllegalOnSubmarket(stack, SubmarketPlugin.TransferAction.PLAYER_BUY) ) continue;
-                    addToGoods(goods,items.getItemId(stack).uniqueId,stack.getSize(),trade.priceForBuying(stack,market)/stack.getSize(),transactionPrimary,stack.getType(),stack.getData());
-                }
+        }
+        for ( CargoStackAPI stack : scan(dock, dock.getFleetCargo()) ) {
+            if ( stack.getSize() <= 0 ) continue;
+            ItemId itemId = items.getItemId(stack);
+            if ( itemId == null || itemId.uniqueId == null ) continue;
+            int item = snapshot.findItem(itemId.uniqueId);
+            if ( snapshot.isInFleet(item) ) {
+                snapshot.addFleetItem(item, stack.getSize(), false, 0, null);
+                continue;
             }
-            if ( submarketSecondary != null && transactionSecondary != null ) {
-                List<CargoStackAPI> stacks = submarketSecondary.getCargo().getStacksCopy();
-                for ( CargoStackAPI stack : stacks ) {
-                    if ( submarketSecondary.isIllegalOnSubmarket(stack, SubmarketPlugin.TransferAction.PLAYER_BUY) ) continue;
-                    addToGoods(goods,items.getItemId(stack).uniqueId,stack.getSize(),trade.priceForBuying(stack,market)/stack.getSize(),transactionSecondary,stack.getType(),stack.getData());
-                }
+            boolean knownWeapon = sellKnownWeapons && stack.isWeaponStack() && knownWeapons.knows(itemId.id);
+            if ( !knownWeapon && !snapshot.hasRule(item) ) continue;
+            int sellableAt = 0;
+            for ( int venue = 0; venue < venues.length; venue++ ) {
+                if ( venues[venue] != null && venue != TradeSnapshot.STOCKPILE && 
+                        !venues[venue].isIllegalOnSubmarket(stack, SubmarketPlugin.TransferAction.PLAYER_SELL) ) sellableAt |= 1 << venue;
             }
-            
-            for ( ItemTradeRule rule : rules ) {
-                String itemId = rule.itemId;
-                if ( itemId == null ) continue;
-                List<CargoStackAPI> stacks = fleetCargo.getStacksCopy();
-                CargoStackAPI cargoStack = null;
-                for ( CargoStackAPI stack : stacks ) {
-                    ItemId stackId = items.getItemId(stack);
-                    if ( itemId.equals(stackId.uniqueId) ) {
-                        cargoStack = stack;
-                        break;
-                    }
-                }
-                float quantity = cargoStack != null ? cargoStack.getSize() : 0;
-                if ( rule.demand > quantity ) {
-                    List<AvailableGoods> available = goods.get(itemId);
-                    if ( available == null ) continue;
-                    Collections.sort(available);
-                    float outstandingDemand = rule.demand - quantity;
-                    for ( AvailableGoods good : available ) {
-                        if ( good.price > rule.maxBuyPrice ) break;
-                        float quantityToBuy = Math.min(outstandingDemand, good.quantity);
-                        if ( good.price == 0 ) {
-                            //free items are transferred directly
-                            CargoData cargo = new CargoData(false);
-                            cargo.addItems(good.type, good.itemData, quantityToBuy);
-                            fleetCargo.addAll(cargo);
-                            good.transaction.getSubmarket().getCargo().removeAll(cargo);
-                            Global.getLogger(SSMSQoLInventoryManagementModPlugin.class).log(Level.DEBUG, "Items were free: "+good.itemData+" "+quantityToBuy);
-                        } else {
-                            good.transaction.getBought().addItems(good.type, good.itemData, quantityToBuy);
-                        }
-                        outstandingDemand -= quantityToBuy;
-                        if ( outstandingDemand <= 0f ) break;
+            snapshot.addFleetItem(snapshot.item(itemId.uniqueId), stack.getSize(), knownWeapon, sellableAt, stack);
+        }
+        //selling known weapons never takes them below their demand so the shortage is known up front
+        snapshot.markShortages();
+        
+        SubmarketAPI stockpile = venues[TradeSnapshot.STOCKPILE];
+        if ( stockpile != null ) {
+            //free stuff at the stockpile
+            addOffers(snapshot, dock, dock.getStockpileLeftovers(), stockpile, TradeSnapshot.STOCKPILE, null, items);
+            addOffers(snapshot, dock, dock.getCargo(stockpile), stockpile, TradeSnapshot.STOCKPILE, prices, items);
+        }
+        for ( int venue = TradeSnapshot.STORAGE; venue < TradeSnapshot.VENUES; venue++ ) {
+            if ( venues[venue] != null ) addOffers(snapshot, dock, dock.getCargo(venues[venue]), venues[venue], venue, prices, items);
+        }
+        dock.metrics.count(DockMetrics.OFFERS_BUILT, snapshot.getOfferCount());
+        return snapshot;
+    }
+    
+    /**
+     * Adds the stacks of the cargo that the fleet is short of as offers. Storage is free and so are stockpile 
+     * leftovers, which are passed without prices.
+     */
+    protected void addOffers(TradeSnapshot snapshot, DockSnapshot dock, CargoAPI cargo, SubmarketAPI submarket, int venue, PriceCache prices, ItemIdCache items) {
+        for ( CargoStackAPI stack : scan(dock, cargo) ) {
+            ItemId resolved = items.getItemId(stack);
+            if ( resolved == null || resolved.uniqueId == null ) continue;
+            String itemId = resolved.uniqueId;
+            int item = snapshot.findItem(itemId);
+            if ( !snapshot.isShort(item) || submarket.isIllegalOnSubmarket(stack, SubmarketPlugin.TransferAction.PLAYER_BUY) ) continue;
+            float price;
+            if ( prices == null || venue == TradeSnapshot.STORAGE ) price = 0f;
+            else if ( venue == TradeSnapshot.STOCKPILE ) price = prices.getStockpilePrice(stack);
+            else price = prices.getBuyPrice(submarket, stack, itemId, dock.tradeMode);
+            snapshot.addOffer(item, venue, stack.getSize(), price, stack);
+        }
+    }
+    
+    protected List<CargoStackAPI> scan(DockSnapshot dock, CargoAPI cargo) {
+        List<CargoStackAPI> stacks = cargo.getStacksCopy();
+        dock.metrics.count(DockMetrics.STACKS_SCANNED, stacks.size());
+        return stacks;
+    }
+    
+    /**
+     * Applies a plan to the game. Must only be used with live snapshots. Free items are moved first, then each 
+     * submarket executes a single transaction holding the sales of known weapons as well as the purchases and sales of 
+     * the rules.
+     */
+    public void execute(TradePlan plan, DockSnapshot dock) {
+        if ( plan.isEmpty() ) return;
+        executeOrders(plan, dock);
+        report(Collections.singletonList(plan));
+    }
+    
+    /**
+     * Splits a plan into parts of at most the given number of orders that each trade with a single submarket. The 
+     * sales of a submarket come before its purchases so a part never spends credits that a later part brings in.
+     */
+    public List<TradePlan> split(TradePlan plan, int partSize) {
+        List<TradePlan> parts = new ArrayList<>();
+        for ( int venue = 0; venue < TradeSnapshot.VENUES; venue++ ) {
+            TradePlan part = null;
+            for ( int pass = 0; pass < 2; pass++ ) {
+                for ( TradePlan.Order order : plan.getOrders() ) {
+                    boolean sale = order.type == TradePlan.OrderType.SALE || order.type == TradePlan.OrderType.WEAPON_SALE;
+                    if ( order.venue != venue || sale != (pass == 0) ) continue;
+                    if ( part == null || part.getOrders().size() >= partSize ) {
+                        part = new TradePlan();
+                        parts.add(part);
                     }
-                } else if ( rule.demand < quantity && cargoStack != null ) {
-                    if ( transactionPrimary != null && !transactionPrimary.getSubmarket().isIllegalOnSubmarket(cargoStack, SubmarketPlugin.TransferAction.PLAYER_SELL) ) 
-                        transactionPrimary.getSold().addItems(cargoStack.getType(), cargoStack.getData(), quantity-rule.demand);
-                    else if ( transactionSecondary != null && !transactionSecondary.getSubmarket().isIllegalOnSubmarket(cargoStack, SubmarketPlugin.TransferAction.PLAYER_SELL) ) 
-                        transactionSecondary.getSold().addItems(cargoStack.getType(), cargoStack.getData(), quantity-rule.demand);
-                    else if ( transactionStorage != null && !transactionStorage.getSubmarket().isIllegalOnSubmarket(cargoStack, SubmarketPlugin.TransferAction.PLAYER_SELL) ) 
-                        transactionStorage.getSold().addItems(cargoStack.getType(), cargoStack.getData(), quantity-rule.demand);
+                    part.add(order);
                 }
             }
-            trade.doTransaction(transactionStockpile,fleetCargo);
-            trade.doTransaction(transactionStorage,fleetCargo);
-            trade.doTransaction(transactionPrimary,fleetCargo);
-            trade.doTransaction(transactionSecondary,fleetCargo);
-            int creditsTraded = Math.round(
-                    (transactionStockpile != null ? transactionStockpile.getCreditValue() : 0) + 
-                    (transactionPrimary != null ? transactionPrimary.getCreditValue() : 0) + 
-                    (transactionSecondary != null ? transactionSecondary.getCreditValue() : 0) + 
-                    (transactionStorage != null ? transactionStorage.getCreditValue() : 0)
-            );
-            if ( creditsTraded < 0 ) Global.getSector().getCampaignUI().addMessage("Spent "+Math.abs(creditsTraded)+" credits through autotrade.");
-            else if ( creditsTraded > 0 ) Global.getSector().getCampaignUI().addMessage("Gained "+creditsTraded+" credits through autotrade.");
         }
+        return parts;
     }
     
-    private void addToGoods(Map<String, List<AvailableGoods>> goods, String commodityId, float quantity, float price, PlayerMarketTransaction transaction, CargoAPI.CargoItemType type, Object itemData) {
-        List<AvailableGoods> lst = goods.get(commodityId);
-        if ( lst == null ) {
-            lst = new ArrayList<>();
-            goods.put(commodityId, lst);
+    /**
+     * Executes the orders of a plan without telling the player, the credits traded are kept on the plan.
+     */
+    public void executeOrders(TradePlan plan, DockSnapshot dock) {
+        final Logger logger = Global.getLogger(SSMSQoLInventoryManagementModPlugin.class);
+        UtilTrade trade = UtilTrade.getInstance();
+        SubmarketAPI[] venues = getVenues(dock);
+        CargoAPI fleetCargo = dock.getFleetCargo();
+        PlayerMarketTransaction[] transactions = new PlayerMarketTransaction[TradeSnapshot.VENUES];
+        CargoAPI[] freeTransfers = new CargoAPI[TradeSnapshot.VENUES];
+        
+        for ( TradePlan.Order order : plan.getOrders() ) {
+            CargoStackAPI stack = (CargoStackAPI) order.handle;
+            SubmarketAPI submarket = venues[order.venue];
+            if ( order.quantity <= 0f ) continue;
+            if ( order.type == TradePlan.OrderType.TRANSFER ) {
+                if ( freeTransfers[order.venue] == null ) freeTransfers[order.venue] = new CargoData(false);
+                freeTransfers[order.venue].addItems(stack.getType(), stack.getData(), order.quantity);
+                if ( logger.isDebugEnabled() ) logger.log(Level.DEBUG, "Items were free: "+stack.getData()+" "+order.quantity);
+                continue;
+            }
+            if ( transactions[order.venue] == null ) transactions[order.venue] = new PlayerMarketTransaction(submarket.getMarket(), submarket, dock.tradeMode);
+            if ( order.type == TradePlan.OrderType.PURCHASE ) transactions[order.venue].getBought().addItems(stack.getType(), stack.getData(), order.quantity);
+            else transactions[order.venue].getSold().addItems(stack.getType(), stack.getData(), order.quantity);
+        }
+        
+        long start = dock.metrics.start();
+        for ( int venue = 0; venue < TradeSnapshot.VENUES; venue++ ) {
+            if ( freeTransfers[venue] == null ) continue;
+            fleetCargo.addAll(freeTransfers[venue]);
+            dock.getCargo(venues[venue]).removeAll(freeTransfers[venue]);
+            if ( venue == TradeSnapshot.STORAGE ) dock.storageChanged(freeTransfers[venue], -1f);
+        }
+        int executed = 0;
+        float credits = 0f;
+        for ( PlayerMarketTransaction transaction : transactions ) {
+            if ( transaction == null || (transaction.getSold().isEmpty() && transaction.getBought().isEmpty()) ) continue;
+            trade.doTransaction(transaction,fleetCargo);
+            credits += transaction.getCreditValue();
+            executed++;
+        }
+        dock.metrics.stop(DockMetrics.EXECUTION, start);
+        dock.metrics.count(DockMetrics.TRANSACTIONS, executed);
+        plan.credits = credits;
+    }
+    
+    /**
+     * Tells the player how many credits the executed plans traded in total.
+     */
+    public void report(List<TradePlan> executed) {
+        float credits = 0f;
+        for ( TradePlan plan : executed ) {
+            credits += plan.credits;
         }
-        lst.add(new AvailableGoods(quantity, price, transaction, type, itemData));
+        int creditsTraded = Math.round(credits);
+        if ( creditsTraded < 0 ) Global.getSector().getCampaignUI().addMessage("Spent "+Math.abs(creditsTraded)+" credits through autotrade.");
+        else if ( creditsTraded > 0 ) Global.getSector().getCampaignUI().addMessage("Gained "+creditsTraded+" credits through autotrade.");
     }
     
-    /*private void writeObject(java.io.ObjectOutputStream out) throws IOException {
-        out.writeInt(version);
-        out.writeObject(rules);
-        out.writeBoolean(sellKnownWeapons);
+    /**
+     * @return The submarkets of the dock indexed by the venues of {@link TradeSnapshot}.
+     */
+    protected SubmarketAPI[] getVenues(DockSnapshot dock) {
+        SubmarketAPI[] venues = new SubmarketAPI[TradeSnapshot.VENUES];
+        venues[TradeSnapshot.STOCKPILE] = dock.stockpile;
+        venues[TradeSnapshot.STORAGE] = dock.storage;
+        venues[TradeSnapshot.PRIMARY] = dock.primary;
+        venues[TradeSnapshot.SECONDARY] = dock.secondary;
+        return venues;
     }
     
-    private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
-        int storedVersion = in.readInt();
-        rules = (List<ItemTradeRule>) in.readObject();
-        sellKnownWeapons = in.readBoolean();
+    /**
+     * Records the version of the template in use, logging when the rules of a newer or older version take effect.
+     */
+    public void syncTemplateVersion() {
+        TemplateLibrary.Template t = TemplateLibrary.getInstance().get(template);
+        if ( t == null || t.version == templateVersion ) return;
+        Global.getLogger(SSMSQoLInventoryManagementModPlugin.class).log(Level.INFO, 
+                "Applying version "+t.version+" of rule template "+t.name+", last applied was "+templateVersion);
+        templateVersion = t.version;
     }
     
-    private void readObjectNoData() throws ObjectStreamException {
-        rules = null;
-        sellKnownWeapons = false;
-    }*/
+    /**
+     * @return The own rules followed by the rules of the template for items the own rules do not cover. The merged 
+     * list is rebuilt whenever the template or the own rules were replaced.
+     */
+    public List<ItemTradeRule> getRules() {
+        TemplateLibrary.Template t = TemplateLibrary.getInstance().get(template);
+        if ( t == null ) return rules;
+        if ( mergedRules == null || mergedTemplate != t || mergedOwnRules != rules || 
+                mergedOwnRulesSize != (rules != null ? rules.size() : 0) ) {
+            List<ItemTradeRule> merged = new ArrayList<>(t.rules.size() + (rules != null ? rules.size() : 0));
+            Set<String> ownItems = new HashSet<>();
+            if ( rules != null ) {
+                merged.addAll(rules);
+                for ( ItemTradeRule rule : rules ) ownItems.add(rule.itemId);
+            }
+            for ( ItemTradeRule rule : t.rules ) {
+                if ( !ownItems.contains(rule.itemId) ) merged.add(rule);
+            }
+            mergedRules = merged;
+            mergedTemplate = t;
+            mergedOwnRules = rules;
+            mergedOwnRulesSize = rules != null ? rules.size() : 0;
+        }
+        return mergedRules;
+    }
+    
+    /**
+     * The working set is kept between docks so steady docks do not allocate it anew.
+     */
+    protected TradeSnapshot getSnapshot() {
+        if ( snapshot == null ) snapshot = new TradeSnapshot();
+        return snapshot;
+    }
+    
+    protected TradePlanner getPlanner() {
+        if ( planner == null ) planner = new TradePlanner();
+        return planner;
+    }
 }
@@ -20,16 +20,17 @@ package ssms.qolinventorymanagement;
 import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.PluginPick;
 import com.fs.starfarer.api.campaign.BaseCampaignPlugin;
+import com.fs.starfarer.api.campaign.CargoAPI;
 import com.fs.starfarer.api.campaign.CampaignUIAPI.CoreUITradeMode;
-import com.fs.starfarer.api.campaign.FactionAPI;
 import com.fs.starfarer.api.campaign.InteractionDialogPlugin;
 import com.fs.starfarer.api.campaign.SectorEntityToken;
-import com.fs.starfarer.api.campaign.econ.MarketAPI;
-import com.fs.starfarer.api.impl.campaign.rulecmd.IsSoughtByPatrols;
-import com.fs.starfarer.api.util.Misc;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
@@ -44,52 +45,494 @@ public class CampaignPlugin extends BaseCampaignPlugin implements Serializable {
     protected WeaponStorage weaponStorage = new WeaponStorage();
     protected SafeStorage safeStorage = new SafeStorage();
     protected AutoTrade autoTrade = new AutoTrade();
+    /**
+     * Milliseconds of work per frame while docking, see {@link DockJob}. Zero runs everything in the frame of the dock.
+     */
+    protected int frameBudget = 0;
+    /**
+     * Only set on the copy written to the savegame, see {@link ConfigurationCodec}.
+     */
+    protected String configuration;
+    
+    protected transient PriceCache priceCache;
+    protected transient StorageRegistry storageRegistry;
+    protected transient SectorIndex sectorIndex;
+    protected transient ItemCatalogue itemCatalogue;
+    protected transient StorageInventory storageInventory;
+    //the union of the configured storages, rebuilt when either feature hands out a different set
+    protected transient Set<String> configuredStorageIds;
+    protected transient Set<String> configuredWeaponStorageIds;
+    protected transient Set<String> configuredSafeStorageIds;
+    protected transient SubmarketRefresher submarketRefresher;
+    protected transient KnownWeapons knownWeapons;
+    protected transient DockPipeline pipeline;
+    protected transient DockPlan preparedDock;
+    //the target the planner last looked at, it is looked at again after the economy ticked
+    protected transient String preparedFor;
+    protected transient CoreUITradeMode preparedTradeMode;
+    protected transient int preparedTicks;
+    protected transient DockJob activeJob;
+    protected transient DockMetrics metrics;
+    protected transient TradeModeResolver tradeModeResolver;
+    protected transient Map<String,DockRecord> dockRecords;
+    protected transient int economyTicks;
 
     @Override
     public PluginPick<InteractionDialogPlugin> pickInteractionDialogPlugin(SectorEntityToken interactionTarget) {
         final Logger logger = Global.getLogger(SSMSQoLInventoryManagementModPlugin.class);
         
         if ( interactionTarget != null && interactionTarget.getMarket() != null ) {
-            MarketAPI market = interactionTarget.getMarket();
-            FactionAPI faction = interactionTarget.getFaction();
-            //Make sure we can trade at the market
-            CoreUITradeMode tm = CoreUITradeMode.NONE;
-            if ( market.isPlayerOwned() ) tm = CoreUITradeMode.OPEN;
-            else {
-                if ( faction != null ) {
-                    if ( !faction.isHostileTo(Global.getSector().getPlayerFaction()) ) {
-                        if ( Global.getSector().getPlayerFleet().isTransponderOn() || market.isFreePort() || faction.getCustomBoolean("allowsTransponderOffTrade") ) {
-                            tm = CoreUITradeMode.OPEN;
-                        } else if ( !IsSoughtByPatrols(faction) ) {
-                            tm = CoreUITradeMode.SNEAK;
-                        }
-                    }
-                }
-            }
-            
-            logger.log(Level.DEBUG, "Trademode: "+tm);
+            CoreUITradeMode tm = resolveTradeMode(interactionTarget);
+            if ( logger.isDebugEnabled() ) logger.log(Level.DEBUG, "Trademode: "+tm);
             if ( tm == CoreUITradeMode.NONE ) return null;
             
-            if ( weaponStorage != null ) {
-                weaponStorage.exchangeWeapons(interactionTarget);
-            }
-            if ( safeStorage != null ) {
-                safeStorage.exchangeItems(interactionTarget);
-            }
-            if ( autoTrade != null ) {
-                autoTrade.trade(interactionTarget, tm);
-            }
+            DockPlan prepared = preparedDock;
+            preparedDock = null;
+            DockMetrics metrics = getMetrics();
+            long start = metrics.start();
+            long allocation = metrics.allocationMark();
+            dock(interactionTarget, tm, prepared);
+            metrics.countAllocation(DockMetrics.ALLOCATED_BYTES, allocation);
+            metrics.stop(DockMetrics.DOCK, start);
         } else {
             logger.log(Level.DEBUG, "not a market");
         }
         return null;
     }
     
-    protected boolean IsSoughtByPatrols(FactionAPI faction) {
-        IsSoughtByPatrols rule = new IsSoughtByPatrols();
-        List<Misc.Token> params = new ArrayList<>();
-        params.add(new Misc.Token(faction.getId(), Misc.TokenType.LITERAL));
-        return rule.execute(null, null, params, null);
+    /**
+     * Runs the stages of the pipeline for the market. A prepared plan is applied instead if nothing changed since it 
+     * was made. Stages whose inputs did not change since the last dock at the market are skipped and submarkets are 
+     * only refreshed once per economy tick when a stage reads their cargo. With a frame budget the stages that do not 
+     * fit into it continue over the following frames.
+     */
+    protected void dock(SectorEntityToken interactionTarget, CoreUITradeMode tm, DockPlan prepared) {
+        long deadline = System.nanoTime() + frameBudget * 1000000L;
+        //a dock still running elsewhere completes first so records and the inventory stay consistent
+        if ( activeJob != null ) activeJob.finish();
+        DockMetrics metrics = getMetrics();
+        DockSnapshot dock = new DockSnapshot(interactionTarget, tm, false, metrics);
+        DockRecord record = getDockRecords().get(interactionTarget.getId());
+        dock.refreshOnRead(getSubmarketRefresher(), economyTicks);
+        dock.setKnownWeapons(updateKnownWeapons());
+        if ( record != null && !record.isCurrent(tm, economyTicks) ) record = null;
+        trackInventory(dock);
+        //submarkets that restock on this dock must do so before the plan is compared against their cargo
+        if ( prepared != null && prepared.isFor(interactionTarget, tm) ) dock.refreshAll();
+        if ( prepared != null && prepared.matches(interactionTarget, tm, dock.fingerprint(), configurationFingerprint()) ) {
+            Logger logger = Global.getLogger(SSMSQoLInventoryManagementModPlugin.class);
+            if ( logger.isDebugEnabled() ) logger.log(Level.DEBUG, "applying prepared dock");
+            getPipeline().apply(prepared.plans, dock);
+        } else if ( frameBudget > 0 ) {
+            DockJob job = new DockJob(this, dock, record, frameBudget * 1000000L);
+            if ( !job.step(deadline) ) {
+                activeJob = job;
+                job.defer();
+            }
+            return;
+        } else {
+            getPipeline().run(dock, record);
+        }
+        recordDock(dock);
+    }
+    
+    /**
+     * @return The dock still running over several frames or null.
+     */
+    public DockJob getActiveJob() {
+        return activeJob;
+    }
+    
+    /**
+     * Called by a job once all stages ran.
+     */
+    protected void finishDock(DockJob job) {
+        recordDock(job.dock);
+        if ( activeJob == job ) activeJob = null;
+        if ( job.isDeferred() ) {
+            Global.getSector().getCampaignUI().addMessage("Inventory management at "+job.dock.market.getName()+" finished.");
+        }
+    }
+    
+    protected void recordDock(DockSnapshot dock) {
+        if ( dock.getInventory() != null ) {
+            dock.getInventory().markCurrent(dock.interactionTarget.getId(), dock.cargoFingerprint(dock.peekCargo(dock.storage)));
+        }
+        getDockRecords().put(dock.interactionTarget.getId(), new DockRecord(dock.tradeMode, economyTicks, 
+                getPipeline().fingerprints(dock)));
+    }
+    
+    /**
+     * @return True if docking would not change anything since the last dock at the market.
+     */
+    protected boolean isIdle(DockSnapshot dock) {
+        DockRecord record = getDockRecords().get(dock.interactionTarget.getId());
+        return record != null && record.isCurrent(dock.tradeMode, economyTicks) && getPipeline().isIdle(dock, record);
+    }
+    
+    protected int weaponStorageFingerprint(DockSnapshot dock) {
+        if ( weaponStorage == null ) return 0;
+        int hash = weaponStorage.hashConfiguration();
+        hash = 31 * hash + (getStorageRegistry().isQualified(dock.interactionTarget) ? 1 : 0);
+        hash = 31 * hash + dock.cargoFingerprint(dock.getFleetCargo());
+        hash = 31 * hash + dock.cargoFingerprint(dock.peekCargo(dock.storage));
+        if ( weaponStorage.sectorWideThreshold ) hash = 31 * hash + getStorageInventory().getRevision();
+        return 31 * hash + getKnownWeapons().getRevision();
+    }
+    
+    protected int safeStorageFingerprint(DockSnapshot dock) {
+        if ( safeStorage == null ) return 0;
+        int hash = safeStorage.hashConfiguration();
+        hash = 31 * hash + (getStorageRegistry().isQualified(dock.interactionTarget) ? 1 : 0);
+        hash = 31 * hash + dock.cargoFingerprint(dock.getFleetCargo());
+        return 31 * hash + dock.cargoFingerprint(dock.peekCargo(dock.storage));
+    }
+    
+    protected int autoTradeFingerprint(DockSnapshot dock) {
+        if ( autoTrade == null ) return 0;
+        int hash = autoTrade.hashConfiguration();
+        hash = 31 * hash + dock.tradeMode.ordinal();
+        hash = 31 * hash + getPriceCache().getEpoch();
+        hash = 31 * hash + getKnownWeapons().getRevision();
+        return 31 * hash + dock.fingerprint();
+    }
+    
+    /**
+     * Plans the dock at the market on copies of the cargos. Submarkets are not refreshed so if they restock on 
+     * docking the plan will not match and the dock runs normally. A target is only looked at once per economy tick, 
+     * if the cargos change in between the plan does not match and the dock runs normally as well.
+     */
+    public void prepareDock(SectorEntityToken interactionTarget) {
+        if ( activeJob != null ) return;
+        CoreUITradeMode tm = resolveTradeMode(interactionTarget);
+        if ( tm == CoreUITradeMode.NONE ) return;
+        if ( interactionTarget.getId().equals(preparedFor) && tm == preparedTradeMode && economyTicks == preparedTicks ) return;
+        preparedFor = interactionTarget.getId();
+        preparedTradeMode = tm;
+        preparedTicks = economyTicks;
+        DockMetrics metrics = getMetrics();
+        DockSnapshot live = new DockSnapshot(interactionTarget, tm, false, metrics);
+        if ( isIdle(live) ) return;
+        KnownWeapons known = updateKnownWeapons();
+        int cargoFingerprint = live.fingerprint();
+        int configurationFingerprint = configurationFingerprint();
+        if ( preparedDock != null && preparedDock.matches(interactionTarget, tm, cargoFingerprint, configurationFingerprint) ) return;
+        
+        long start = metrics.start();
+        DockSnapshot dock = new DockSnapshot(interactionTarget, tm, true, metrics);
+        dock.setKnownWeapons(known);
+        trackInventory(dock);
+        DockPlan plan = new DockPlan(interactionTarget, tm, cargoFingerprint, configurationFingerprint);
+        plan.plans = getPipeline().plan(dock);
+        preparedDock = plan;
+        metrics.stop(DockMetrics.PREPARE, start);
+    }
+    
+    /**
+     * Everything besides the cargos that a prepared dock depends on.
+     */
+    protected int configurationFingerprint() {
+        int hash = getPipeline().hashConfiguration();
+        hash = 31 * hash + getPriceCache().getEpoch();
+        return 31 * hash + getKnownWeapons().getRevision();
+    }
+    
+    public CoreUITradeMode resolveTradeMode(SectorEntityToken interactionTarget) {
+        return getTradeModeResolver().resolve(interactionTarget);
+    }
+    
+    public PriceCache getPriceCache() {
+        if ( priceCache == null ) priceCache = new PriceCache(getMetrics());
+        return priceCache;
+    }
+    
+    protected Map<String,DockRecord> getDockRecords() {
+        if ( dockRecords == null ) dockRecords = new HashMap<>();
+        return dockRecords;
+    }
+    
+    /**
+     * Called on every economy tick, submarkets are refreshed again the next time their cargo is read.
+     */
+    public void markEconomyTick() {
+        economyTicks++;
+    }
+    
+    /**
+     * @return The stages run while docking. Weapon storage, safe storage and auto trade are registered first in that 
+     * order, other stages may be registered around them.
+     */
+    public DockPipeline getPipeline() {
+        if ( pipeline == null ) {
+            pipeline = new DockPipeline();
+            pipeline.register(new WeaponStorageStage());
+            pipeline.register(new SafeStorageStage());
+            pipeline.register(new AutoTradeStage());
+        }
+        return pipeline;
+    }
+    
+    public TradeModeResolver getTradeModeResolver() {
+        if ( tradeModeResolver == null ) tradeModeResolver = new TradeModeResolver();
+        return tradeModeResolver;
+    }
+    
+    public StorageRegistry getStorageRegistry() {
+        if ( storageRegistry == null ) storageRegistry = new StorageRegistry();
+        return storageRegistry;
+    }
+    
+    public DockMetrics getMetrics() {
+        if ( metrics == null ) metrics = new DockMetrics();
+        return metrics;
+    }
+    
+    public SectorIndex getSectorIndex() {
+        if ( sectorIndex == null ) sectorIndex = new SectorIndex();
+        return sectorIndex;
+    }
+    
+    /**
+     * Hands the inventory index to docks at configured storages. Live docks bring the index of the storage up to date 
+     * first, the exchanges made during the dock are added by the features.
+     */
+    protected void trackInventory(DockSnapshot dock) {
+        String entityId = dock.interactionTarget.getId();
+        if ( dock.storage == null || !getConfiguredStorageIds().contains(entityId) ) return;
+        StorageInventory inventory = getStorageInventory();
+        if ( weaponStorage != null && weaponStorage.sectorWideThreshold ) inventory.ensureIndexed(getConfiguredStorageIds());
+        if ( !dock.isCopied() ) {
+            CargoAPI storageCargo = dock.getCargo(dock.storage);
+            inventory.refresh(entityId, storageCargo, dock.cargoFingerprint(storageCargo), dock.getItemIds());
+        }
+        dock.setInventory(inventory);
+    }
+    
+    /**
+     * @return Ids of all entities configured as weapon or safe storage. The same set is returned until the configured 
+     * storages change, it must not be modified.
+     */
+    public Set<String> getConfiguredStorageIds() {
+        Set<String> weaponIds = weaponStorage != null ? weaponStorage.getStorageIds() : null;
+        Set<String> safeIds = safeStorage != null ? safeStorage.getStorageIds() : null;
+        if ( configuredStorageIds == null || weaponIds != configuredWeaponStorageIds || safeIds != configuredSafeStorageIds ) {
+            Set<String> ids = new HashSet<>();
+            if ( weaponIds != null ) ids.addAll(weaponIds);
+            if ( safeIds != null ) ids.addAll(safeIds);
+            configuredStorageIds = ids;
+            configuredWeaponStorageIds = weaponIds;
+            configuredSafeStorageIds = safeIds;
+        }
+        return configuredStorageIds;
+    }
+    
+    /**
+     * @return The snapshot of known weapons as of the last dock or planned dock.
+     */
+    public KnownWeapons getKnownWeapons() {
+        if ( knownWeapons == null ) knownWeapons = updateKnownWeapons();
+        return knownWeapons;
+    }
+    
+    /**
+     * Updates the snapshot if the player faction learned or forgot weapons, see {@link KnownWeapons}.
+     */
+    protected KnownWeapons updateKnownWeapons() {
+        if ( knownWeapons == null ) knownWeapons = new KnownWeapons();
+        return knownWeapons.update(Global.getSector().getPlayerFaction(), economyTicks);
+    }
+    
+    public SubmarketRefresher getSubmarketRefresher() {
+        if ( submarketRefresher == null ) submarketRefresher = new SubmarketRefresher();
+        return submarketRefresher;
+    }
+    
+    public StorageInventory getStorageInventory() {
+        if ( storageInventory == null ) storageInventory = new StorageInventory();
+        return storageInventory;
+    }
+    
+    /**
+     * @return Where the configured storages hold the item, for showing in the menu.
+     */
+    public String describeStoredItem(String uniqueId) {
+        if ( uniqueId == null ) return "";
+        StorageInventory inventory = getStorageInventory();
+        inventory.ensureIndexed(getConfiguredStorageIds());
+        Map<String,Float> locations = inventory.getLocations(uniqueId);
+        if ( locations.isEmpty() ) return "Not in any configured storage";
+        StringBuilder sb = new StringBuilder();
+        for ( Map.Entry<String,Float> location : locations.entrySet() ) {
+            if ( sb.length() > 0 ) sb.append(", ");
+            sb.append(getSectorIndex().getLabel(location.getKey())).append(" x").append(Math.round(location.getValue()));
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Brings the applied template versions in line with the templates that were just loaded.
+     */
+    public void syncTemplateVersions() {
+        if ( safeStorage != null ) safeStorage.syncTemplateVersion();
+        if ( autoTrade != null ) autoTrade.syncTemplateVersion();
+    }
+    
+    /**
+     * @return The catalogue of all items, built once per loaded game.
+     */
+    public ItemCatalogue getItemCatalogue() {
+        if ( itemCatalogue == null ) itemCatalogue = new ItemCatalogue();
+        return itemCatalogue;
+    }
+    
+    /**
+     * Runs {@link WeaponStorage} on the configured weapon storages.
+     */
+    protected class WeaponStorageStage implements ChunkedDockStage<Map<String,Integer>> {
+        @Override
+        public String getId() {
+            return DockMetrics.WEAPON_STORAGE;
+        }
+
+        @Override
+        public boolean isApplicable(DockSnapshot dock) {
+            return weaponStorage != null && weaponStorage.isStorage(dock.interactionTarget, getStorageRegistry());
+        }
+
+        @Override
+        public int hashConfiguration() {
+            return weaponStorage != null ? weaponStorage.hashConfiguration() : 0;
+        }
+
+        @Override
+        public int fingerprint(DockSnapshot dock) {
+            return weaponStorageFingerprint(dock);
+        }
+
+        @Override
+        public Map<String,Integer> plan(DockSnapshot dock) {
+            return weaponStorage.planExchange(dock, getStorageRegistry());
+        }
+
+        @Override
+        public void apply(Map<String,Integer> plan, DockSnapshot dock) {
+            weaponStorage.applyExchange(plan, dock);
+        }
+
+        @Override
+        public List<Map<String,Integer>> split(Map<String,Integer> plan) {
+            return weaponStorage.split(plan, PART_SIZE);
+        }
+
+        @Override
+        public void applyPart(Map<String,Integer> part, DockSnapshot dock) {
+            weaponStorage.applyExchange(part, dock);
+        }
+
+        @Override
+        public void report(List<Map<String,Integer>> parts, DockSnapshot dock) {
+        }
+    }
+    
+    /**
+     * Runs {@link SafeStorage} on the configured safe storages.
+     */
+    protected class SafeStorageStage implements ChunkedDockStage<CargoAPI> {
+        @Override
+        public String getId() {
+            return DockMetrics.SAFE_STORAGE;
+        }
+
+        @Override
+        public boolean isApplicable(DockSnapshot dock) {
+            return safeStorage != null && safeStorage.isApplicable(dock, getStorageRegistry());
+        }
+
+        @Override
+        public int hashConfiguration() {
+            return safeStorage != null ? safeStorage.hashConfiguration() : 0;
+        }
+
+        @Override
+        public int fingerprint(DockSnapshot dock) {
+            return safeStorageFingerprint(dock);
+        }
+
+        @Override
+        public CargoAPI plan(DockSnapshot dock) {
+            return safeStorage.planExchange(dock, getStorageRegistry());
+        }
+
+        @Override
+        public void apply(CargoAPI plan, DockSnapshot dock) {
+            safeStorage.applyExchange(plan, dock);
+        }
+
+        @Override
+        public List<CargoAPI> split(CargoAPI plan) {
+            return safeStorage.split(plan, PART_SIZE);
+        }
+
+        @Override
+        public void applyPart(CargoAPI part, DockSnapshot dock) {
+            safeStorage.moveToStorage(part, dock);
+        }
+
+        @Override
+        public void report(List<CargoAPI> parts, DockSnapshot dock) {
+            safeStorage.report(parts, dock);
+        }
+    }
+    
+    /**
+     * Runs {@link AutoTrade} on every market. Trades go through the markets of the game so they are not applied to 
+     * copied cargos.
+     */
+    protected class AutoTradeStage implements ChunkedDockStage<TradePlan> {
+        @Override
+        public String getId() {
+            return DockMetrics.AUTO_TRADE;
+        }
+
+        @Override
+        public boolean isApplicable(DockSnapshot dock) {
+            return autoTrade != null && autoTrade.isApplicable();
+        }
+
+        @Override
+        public int hashConfiguration() {
+            return autoTrade != null ? autoTrade.hashConfiguration() : 0;
+        }
+
+        @Override
+        public int fingerprint(DockSnapshot dock) {
+            return autoTradeFingerprint(dock);
+        }
+
+        @Override
+        public TradePlan plan(DockSnapshot dock) {
+            return autoTrade.plan(dock, getPriceCache());
+        }
+
+        @Override
+        public void apply(TradePlan plan, DockSnapshot dock) {
+            if ( !dock.isCopied() ) autoTrade.execute(plan, dock);
+        }
+
+        @Override
+        public List<TradePlan> split(TradePlan plan) {
+            return autoTrade.split(plan, PART_SIZE);
+        }
+
+        @Override
+        public void applyPart(TradePlan part, DockSnapshot dock) {
+            if ( !dock.isCopied() ) autoTrade.executeOrders(part, dock);
+        }
+
+        @Override
+        public void report(List<TradePlan> parts, DockSnapshot dock) {
+            if ( !dock.isCopied() ) autoTrade.report(parts);
+        }
     }
     
     @Override
@@ -102,24 +545,42 @@ public class CampaignPlugin extends BaseCampaignPlugin implements Serializable {
         return false;
     }
     
-    /*private void writeObject(java.io.ObjectOutputStream out) throws IOException {
-        out.writeInt(version);
-        out.writeObject(weaponStorage);
-        out.writeObject(safeStorage);
-        out.writeObject(autoTrade);
+    /**
+     * The savegame only receives the packed configuration. Feature objects are left out of the copy that is written.
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        CampaignPlugin packed = new CampaignPlugin();
+        packed.weaponStorage = null;
+        packed.safeStorage = null;
+        packed.autoTrade = null;
+        packed.configuration = ConfigurationCodec.encode(weaponStorage, safeStorage, autoTrade, frameBudget);
+        return packed;
     }
     
-    private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
-        int storedVersion = in.readInt();
-        weaponStorage = (WeaponStorage) in.readObject();
-        safeStorage = (SafeStorage) in.readObject();
-        autoTrade = (AutoTrade) in.readObject();
+    /**
+     * Unpacks the configuration. Saves from before the packed format still carry the feature objects as fields and 
+     * are taken over as they are, the next save writes them packed.
+     */
+    private Object readResolve() throws ObjectStreamException {
+        if ( configuration != null ) {
+            try {
+                ConfigurationCodec.Configuration conf = ConfigurationCodec.decode(configuration);
+                weaponStorage = conf.weaponStorage;
+                safeStorage = conf.safeStorage;
+                autoTrade = conf.autoTrade;
+                frameBudget = conf.frameBudget;
+            } catch (IllegalArgumentException ex) {
+                Global.getLogger(SSMSQoLInventoryManagementModPlugin.class).log(Level.ERROR, 
+                        "Failed to read the saved configuration, using defaults.", ex);
+                weaponStorage = new WeaponStorage();
+                safeStorage = new SafeStorage();
+                autoTrade = new AutoTrade();
+            }
+            configuration = null;
+        } else {
+            Global.getLogger(SSMSQoLInventoryManagementModPlugin.class).log(Level.INFO, 
+                    "Migrating the configuration to the packed save format.");
+        }
+        return this;
     }
-    
-    private void readObjectNoData() throws ObjectStreamException {
-        //In case this gets added to an already serialized object as a superclass we need to initialize its values.
-        weaponStorage = new WeaponStorage();
-        safeStorage = new SafeStorage();
-        autoTrade = new AutoTrade();
-    }*/
 }
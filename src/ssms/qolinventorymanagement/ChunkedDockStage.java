@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import java.util.List;
+
+/**
+ * A stage whose plan can be applied in parts, so a {@link DockJob} can spread a large plan over several frames and 
+ * check its deadline between the parts.
+ *
+ * @param <P> The plan the stage makes and applies.
+ * @author Malte Schulze
+ */
+public interface ChunkedDockStage<P> extends DockStage<P> {
+    /**
+     * Number of weapons, stacks or orders in a part.
+     */
+    int PART_SIZE = 64;
+
+    /**
+     * @return The plan split into parts that applied in order have the same effect as the whole plan.
+     */
+    List<P> split(P plan);
+
+    /**
+     * Applies one part of a split plan. Unlike {@link #apply} nothing is reported to the player.
+     */
+    void applyPart(P part, DockSnapshot dock);
+
+    /**
+     * Tells the player about the parts that were applied, once all of them were.
+     */
+    void report(List<P> parts, DockSnapshot dock);
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs the configuration of the {@link CampaignPlugin} into a single string for the savegame. Every distinct entity
+ * and item id is written once into a table at the start and referred to by its index afterwards. Values are separated
+ * by semicolons and the first value is the format version.
+ * <p>
+ * Version 1: {@code 1;<id count>;<ids>...;<weapon storage>;<safe storage>;<auto trade>} where each feature starts with
+ * 1 if it is configured and 0 otherwise. Lists are written as their size followed by their elements, a size of -1
+ * stands for a missing list and an id index of -1 for a missing id.
+ * <p>
+ * Version 2: Safe storage and auto trade end with the name of their template as an id followed by the template
+ * version. Version 1 strings are read as having no template.
+ * <p>
+ * Version 3: Weapon storage ends with the flag for the sector wide threshold. Older strings are read with the flag off.
+ * <p>
+ * Version 4: The frame budget follows the features. Older strings are read without a budget.
+ *
+ * @author Malte Schulze
+ */
+public class ConfigurationCodec {
+    public static final int VERSION = 4;
+    protected static final char SEPARATOR = ';';
+
+    /**
+     * Holds the configuration read from a packed string.
+     */
+    static public class Configuration {
+        public WeaponStorage weaponStorage;
+        public SafeStorage safeStorage;
+        public AutoTrade autoTrade;
+        public int frameBudget;
+    }
+
+    public static String encode(WeaponStorage weaponStorage, SafeStorage safeStorage, AutoTrade autoTrade, int frameBudget) {
+        Writer body = new Writer();
+        body.flag(weaponStorage != null);
+        if ( weaponStorage != null ) {
+            body.ids(weaponStorage.entityIds);
+            body.value(weaponStorage.threshold);
+            body.flag(weaponStorage.keepWeaponsWithoutBlueprint);
+            body.flag(weaponStorage.sectorWideThreshold);
+        }
+        body.flag(safeStorage != null);
+        if ( safeStorage != null ) {
+            body.ids(safeStorage.entityIds);
+            body.ids(safeStorage.itemsToStore);
+            body.flag(safeStorage.storeAllRecipes);
+            body.id(safeStorage.template);
+            body.value(safeStorage.templateVersion);
+        }
+        body.flag(autoTrade != null);
+        if ( autoTrade != null ) {
+            body.flag(autoTrade.sellKnownWeapons);
+            List<AutoTrade.ItemTradeRule> rules = autoTrade.rules;
+            body.value(rules != null ? rules.size() : -1);
+            if ( rules != null ) {
+                for ( AutoTrade.ItemTradeRule rule : rules ) {
+                    body.id(rule.itemId);
+                    body.value(rule.demand);
+                    body.value(rule.minSellPrice);
+                    body.value(rule.maxBuyPrice);
+                }
+            }
+            body.id(autoTrade.template);
+            body.value(autoTrade.templateVersion);
+        }
+        body.value(frameBudget);
+
+        StringBuilder sb = new StringBuilder(body.sb.length() + 16 * body.ids.size());
+        sb.append(VERSION).append(SEPARATOR).append(body.ids.size());
+        for ( String id : body.ids ) {
+            sb.append(SEPARATOR);
+            escape(id, sb);
+        }
+        return sb.append(body.sb).toString();
+    }
+
+    /**
+     * @throws IllegalArgumentException If the string was written by an unknown version or is damaged.
+     */
+    public static Configuration decode(String packed) {
+        Reader in = new Reader(packed);
+        int version = in.integer();
+        if ( version < 1 || version > VERSION ) throw new IllegalArgumentException("Unknown configuration version "+version);
+        int idCount = in.count(false);
+        in.table = new String[idCount];
+        for ( int i = 0; i < idCount; i++ ) {
+            in.table[i] = unescape(in.next());
+        }
+
+        Configuration conf = new Configuration();
+        if ( in.flag() ) {
+            WeaponStorage ws = new WeaponStorage();
+            ws.entityIds = in.ids();
+            ws.threshold = in.integer();
+            ws.keepWeaponsWithoutBlueprint = in.flag();
+            if ( version >= 3 ) ws.sectorWideThreshold = in.flag();
+            conf.weaponStorage = ws;
+        }
+        if ( in.flag() ) {
+            SafeStorage ss = new SafeStorage();
+            ss.entityIds = in.ids();
+            ss.itemsToStore = in.ids();
+            ss.storeAllRecipes = in.flag();
+            if ( version >= 2 ) {
+                ss.template = in.id();
+                ss.templateVersion = in.integer();
+            }
+            conf.safeStorage = ss;
+        }
+        if ( in.flag() ) {
+            AutoTrade at = new AutoTrade();
+            at.sellKnownWeapons = in.flag();
+            int ruleCount = in.count(true);
+            if ( ruleCount >= 0 ) {
+                at.rules = new ArrayList<>(ruleCount);
+                for ( int i = 0; i < ruleCount; i++ ) {
+                    AutoTrade.ItemTradeRule rule = new AutoTrade.ItemTradeRule();
+                    rule.itemId = in.id();
+                    rule.demand = in.integer();
+                    rule.minSellPrice = in.decimal();
+                    rule.maxBuyPrice = in.decimal();
+                    at.rules.add(rule);
+                }
+            }
+            if ( version >= 2 ) {
+                at.template = in.id();
+                at.templateVersion = in.integer();
+            }
+            conf.autoTrade = at;
+        }
+        if ( version >= 4 ) conf.frameBudget = in.integer();
+        if ( in.hasNext() ) throw new IllegalArgumentException("Unexpected data after the configuration.");
+        return conf;
+    }
+
+    /**
+     * Ids may contain the separator so it and the escape character are written as percent codes.
+     */
+    protected static void escape(String id, StringBuilder sb) {
+        for ( int i = 0; i < id.length(); i++ ) {
+            char c = id.charAt(i);
+            if ( c == SEPARATOR ) sb.append("%3B");
+            else if ( c == '%' ) sb.append("%25");
+            else sb.append(c);
+        }
+    }
+
+    protected static String unescape(String id) {
+        if ( id.indexOf('%') < 0 ) return id;
+        StringBuilder sb = new StringBuilder(id.length());
+        for ( int i = 0; i < id.length(); i++ ) {
+            char c = id.charAt(i);
+            if ( c == '%' ) {
+                if ( i + 2 >= id.length() ) throw new IllegalArgumentException("Damaged configuration, broken escape in "+id);
+                sb.append((char)Integer.parseInt(id.substring(i+1, i+3), 16));
+                i += 2;
+            } else sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    protected static class Writer {
+        protected final StringBuilder sb = new StringBuilder();
+        protected final Map<String,Integer> indices = new HashMap<>();
+        protected final List<String> ids = new ArrayList<>();
+
+        protected void value(int value) {
+            sb.append(SEPARATOR).append(value);
+        }
+
+        protected void value(float value) {
+            sb.append(SEPARATOR).append(value);
+        }
+
+        protected void flag(boolean value) {
+            sb.append(SEPARATOR).append(value ? '1' : '0');
+        }
+
+        protected void id(String id) {
+            if ( id == null ) {
+                value(-1);
+                return;
+            }
+            Integer index = indices.get(id);
+            if ( index == null ) {
+                index = ids.size();
+                ids.add(id);
+                indices.put(id, index);
+            }
+            value(index);
+        }
+
+        protected void ids(List<String> list) {
+            value(list != null ? list.size() : -1);
+            if ( list != null ) {
+                for ( String id : list ) {
+                    id(id);
+                }
+            }
+        }
+    }
+
+    protected static class Reader {
+        protected final String packed;
+        protected int position = 0;
+        protected String[] table;
+
+        protected Reader(String packed) {
+            this.packed = packed;
+        }
+
+        protected boolean hasNext() {
+            return position <= packed.length();
+        }
+
+        protected String next() {
+            if ( !hasNext() ) throw new IllegalArgumentException("Configuration ends early.");
+            int end = packed.indexOf(SEPARATOR, position);
+            if ( end < 0 ) end = packed.length();
+            String value = packed.substring(position, end);
+            position = end + 1;
+            return value;
+        }
+
+        protected int integer() {
+            try {
+                return Integer.parseInt(next());
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Damaged configuration.", ex);
+            }
+        }
+
+        protected float decimal() {
+            try {
+                return Float.parseFloat(next());
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Damaged configuration.", ex);
+            }
+        }
+
+        /**
+         * Reads the size of a list. Each element takes at least one more value, so a size larger than the rest of 
+         * the string can not be right.
+         * @param nullable If -1 is allowed for a missing list.
+         */
+        protected int count(boolean nullable) {
+            int count = integer();
+            if ( count < (nullable ? -1 : 0) || count > packed.length() - position + 1 ) {
+                throw new IllegalArgumentException("Damaged configuration, invalid count "+count);
+            }
+            return count;
+        }
+
+        protected boolean flag() {
+            return integer() != 0;
+        }
+
+        protected String id() {
+            int index = integer();
+            if ( index < -1 || index >= table.length ) throw new IllegalArgumentException("Unknown id index "+index);
+            return index >= 0 ? table[index] : null;
+        }
+
+        protected List<String> ids() {
+            int size = count(true);
+            if ( size < 0 ) return null;
+            List<String> list = new ArrayList<>(size);
+            for ( int i = 0; i < size; i++ ) {
+                list.add(id());
+            }
+            return list;
+        }
+    }
+}
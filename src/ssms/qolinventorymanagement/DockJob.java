@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.EveryFrameScript;
+import com.fs.starfarer.api.Global;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs the stages of a dock over several frames so docking at very large storages does not stall a single frame. 
+ * Every frame plans stages and applies their plans until its budget is used up, at least one step per frame. Plans 
+ * of a {@link ChunkedDockStage} are applied a part at a time with the deadline checked between the parts. Each stage 
+ * plans against the cargos as the stages before it left them.
+ * <p>
+ * The player may trade while the job continues. Trades are reported through {@link #cargoTouched()}, after which the 
+ * stage in progress is planned again against the cargos as they are before anything more is applied.
+ *
+ * @author Malte Schulze
+ */
+public class DockJob implements EveryFrameScript {
+    protected final CampaignPlugin plugin;
+    protected final DockSnapshot dock;
+    protected final DockRecord record;
+    protected final List<DockStage<?>> stages;
+    protected final long budgetNanos;
+    protected int next = 0;
+    protected StageRun<?> current;
+    protected boolean stepping = false;
+    protected boolean touched = false;
+    protected boolean deferred = false;
+    protected boolean done = false;
+
+    /**
+     * @param record The record of the last dock at the market, may be null.
+     * @param budgetNanos Time the stages may take per frame.
+     */
+    public DockJob(CampaignPlugin plugin, DockSnapshot dock, DockRecord record, long budgetNanos) {
+        this.plugin = plugin;
+        this.dock = dock;
+        this.record = record;
+        this.stages = new ArrayList<>(plugin.getPipeline().getStages());
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * Applies parts until the deadline passed.
+     * @return True once all stages ran.
+     */
+    public boolean step(long deadline) {
+        stepping = true;
+        try {
+            if ( touched ) revalidate();
+            while ( current != null || next < stages.size() ) {
+                if ( current == null ) {
+                    DockStage<?> stage = stages.get(next++);
+                    if ( plugin.getPipeline().isDue(stage, dock, record) ) current = begin(stage);
+                } else {
+                    current.applyNext();
+                }
+                if ( current != null && !current.hasNext() ) {
+                    current.finish();
+                    current = null;
+                }
+                if ( (current != null || next < stages.size()) && System.nanoTime() >= deadline ) return false;
+            }
+        } finally {
+            stepping = false;
+        }
+        if ( !done ) {
+            done = true;
+            plugin.finishDock(this);
+        }
+        return true;
+    }
+
+    private <P> StageRun<P> begin(DockStage<P> stage) {
+        StageRun<P> run = new StageRun<>(stage);
+        run.plan();
+        return run;
+    }
+
+    /**
+     * Runs all remaining stages at once.
+     */
+    public void finish() {
+        step(Long.MAX_VALUE);
+    }
+
+    /**
+     * Marks the cargos as changed by something other than this job. Changes made while the job itself is stepping 
+     * are its own.
+     */
+    public void cargoTouched() {
+        if ( !stepping ) touched = true;
+    }
+
+    /**
+     * Drops everything remembered about the cargos and plans the stage in progress again, the parts already applied 
+     * stay applied.
+     */
+    protected void revalidate() {
+        touched = false;
+        dock.cargoChanged();
+        plugin.trackInventory(dock);
+        if ( current != null ) current.plan();
+    }
+
+    /**
+     * Continues the job on the following frames and tells the player how far it got.
+     */
+    public void defer() {
+        deferred = true;
+        Global.getSector().addTransientScript(this);
+        Global.getSector().getCampaignUI().addMessage("Inventory management at "+dock.market.getName()+": "+
+                (current != null ? next - 1 : next)+" of "+stages.size()+" steps done, continuing while docked.");
+    }
+
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public boolean runWhilePaused() {
+        //docking opens a dialog which pauses the campaign
+        return true;
+    }
+
+    @Override
+    public void advance(float amount) {
+        if ( done ) return;
+        long start = dock.metrics.start();
+        dock.metrics.count(DockMetrics.DEFERRED_FRAMES, 1);
+        step(start + budgetNanos);
+        dock.metrics.stop(DockMetrics.DEFERRED, start);
+    }
+
+    /**
+     * A stage in progress with the parts of its plan that are left. The time it takes over all frames is recorded as 
+     * a single sample of its timer.
+     */
+    protected class StageRun<P> {
+        protected final DockStage<P> stage;
+        protected final List<P> applied = new ArrayList<>();
+        protected List<P> parts = Collections.emptyList();
+        protected int part = 0;
+        protected long nanos = 0;
+
+        protected StageRun(DockStage<P> stage) {
+            this.stage = stage;
+        }
+
+        /**
+         * Plans the stage against the cargos as they are now, replacing the parts that are left.
+         */
+        protected void plan() {
+            long start = dock.metrics.start();
+            P plan = stage.plan(dock);
+            if ( plan == null ) parts = Collections.emptyList();
+            else if ( stage instanceof ChunkedDockStage ) parts = ((ChunkedDockStage<P>)stage).split(plan);
+            else parts = Collections.singletonList(plan);
+            part = 0;
+            nanos += System.nanoTime() - start;
+        }
+
+        protected boolean hasNext() {
+            return part < parts.size();
+        }
+
+        protected void applyNext() {
+            long start = dock.metrics.start();
+            P plan = parts.get(part++);
+            if ( stage instanceof ChunkedDockStage ) {
+                ((ChunkedDockStage<P>)stage).applyPart(plan, dock);
+                applied.add(plan);
+            } else {
+                stage.apply(plan, dock);
+            }
+            nanos += System.nanoTime() - start;
+        }
+
+        protected void finish() {
+            long start = dock.metrics.start();
+            if ( stage instanceof ChunkedDockStage && !applied.isEmpty() ) ((ChunkedDockStage<P>)stage).report(applied, dock);
+            dock.cargoChanged();
+            dock.metrics.getTimer(stage.getId()).record(nanos + System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Timers and counters for the work the mod does while docking. The registry only lives for the session and is shown
+ * read only on the diagnostics page of the game menu.
+ *
+ * @author Malte Schulze
+ */
+public class DockMetrics {
+    public static final String DOCK = "dock", PREPARE = "prepare", REFRESH = "refresh", WEAPON_STORAGE = "weaponStorage",
+            SAFE_STORAGE = "safeStorage", AUTO_TRADE = "autoTrade", OFFERS = "offers", PRICING = "pricing",
+            EXECUTION = "execution", DEFERRED = "deferred";
+    public static final String STACKS_SCANNED = "stacksScanned", OFFERS_BUILT = "offersBuilt",
+            TRANSACTIONS = "transactions", STAGES_SKIPPED = "stagesSkipped",
+            STAGES_NOT_APPLICABLE = "stagesNotApplicable", DEFERRED_FRAMES = "deferredFrames", ALLOCATED_BYTES = "allocatedBytes",
+            ITEM_IDS_RESOLVED = "itemIdsResolved";
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Latencies of a single stage. The histogram and percentiles cover the most recent samples only.
+     */
+    static public class Timer {
+        public static final int WINDOW = 128;
+        /**
+         * Upper bounds of the histogram buckets in nanoseconds, the last bucket takes everything above.
+         */
+        protected static final long[] BUCKETS = new long[]{100000L, 1000000L, 10000000L, 100000000L};
+        protected static final String[] BUCKET_LABELS = new String[]{"<0.1ms", "<1ms", "<10ms", "<100ms", ">=100ms"};
+
+        protected final long[] samples = new long[WINDOW];
+        protected long count = 0;
+        protected long totalNanos = 0;
+        protected long maxNanos = 0;
+
+        public void record(long nanos) {
+            samples[(int)(count % WINDOW)] = nanos;
+            count++;
+            totalNanos += nanos;
+            if ( nanos > maxNanos ) maxNanos = nanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * @param percent Between 0 and 100.
+         * @return The latency below which the given percentage of the recent samples lie.
+         */
+        public long percentile(int percent) {
+            long[] recent = recent();
+            if ( recent.length == 0 ) return 0;
+            Arrays.sort(recent);
+            return recent[Math.min(recent.length - 1, recent.length * percent / 100)];
+        }
+
+        /**
+         * @return Number of recent samples per bucket.
+         */
+        public int[] histogram() {
+            int[] histogram = new int[BUCKETS.length + 1];
+            for ( long nanos : recent() ) {
+                int bucket = 0;
+                while ( bucket < BUCKETS.length && nanos >= BUCKETS[bucket] ) bucket++;
+                histogram[bucket]++;
+            }
+            return histogram;
+        }
+
+        protected long[] recent() {
+            return Arrays.copyOf(samples, (int)Math.min(count, WINDOW));
+        }
+
+        @Override
+        public String toString() {
+            if ( count == 0 ) return "no samples";
+            StringBuilder sb = new StringBuilder().append(count).append("x, avg ").append(millis(totalNanos / count))
+                    .append(", p50 ").append(millis(percentile(50))).append(", p95 ").append(millis(percentile(95)))
+                    .append(", max ").append(millis(maxNanos)).append(" |");
+            int[] histogram = histogram();
+            for ( int i = 0; i < histogram.length; i++ ) {
+                sb.append(' ').append(BUCKET_LABELS[i]).append(':').append(histogram[i]);
+            }
+            return sb.toString();
+        }
+
+        protected static String millis(long nanos) {
+            return String.format("%.2fms", nanos / 1000000d);
+        }
+    }
+
+    protected final Map<String,Timer> timers = new HashMap<>();
+    protected final Map<String,long[]> counters = new HashMap<>();
+
+    /**
+     * @return The start time to hand to {@link #stop(String, long)}.
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void stop(String timer, long start) {
+        getTimer(timer).record(System.nanoTime() - start);
+    }
+
+    public Timer getTimer(String timer) {
+        Timer t = timers.get(timer);
+        if ( t == null ) {
+            t = new Timer();
+            timers.put(timer, t);
+        }
+        return t;
+    }
+
+    /**
+     * @return Bytes allocated by the current thread so far, to hand to {@link #countAllocation(String, long)}, or -1 
+     * if the JVM does not measure allocations.
+     */
+    public long allocationMark() {
+        if ( THREADS instanceof com.sun.management.ThreadMXBean ) {
+            return ((com.sun.management.ThreadMXBean)THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the bytes the current thread allocated since the mark was taken to the counter.
+     */
+    public void countAllocation(String counter, long mark) {
+        if ( mark < 0 ) return;
+        long now = allocationMark();
+        if ( now >= mark ) count(counter, now - mark);
+    }
+
+    public void count(String counter, long amount) {
+        long[] c = counters.get(counter);
+        if ( c == null ) {
+            c = new long[1];
+            counters.put(counter, c);
+        }
+        c[0] += amount;
+    }
+
+    public long getCounter(String counter) {
+        long[] c = counters.get(counter);
+        return c != null ? c[0] : 0;
+    }
+
+    public void reset() {
+        timers.clear();
+        counters.clear();
+    }
+}
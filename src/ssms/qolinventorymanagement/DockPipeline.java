@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ordered stages run while docking. A stage whose preconditions fail is passed over before any cargo is read 
+ * and a stage whose fingerprint did not change since the last dock at the market is skipped. Each stage sees the 
+ * cargos as the stages before it left them.
+ * <p>
+ * Other mods may add their own stages through {@link CampaignPlugin#getPipeline()}.
+ *
+ * @author Malte Schulze
+ */
+public class DockPipeline {
+    protected final List<DockStage<?>> stages = new ArrayList<>();
+
+    /**
+     * Adds the stage at the end, or in place of the stage with the same id.
+     */
+    public void register(DockStage<?> stage) {
+        for ( int i = 0; i < stages.size(); i++ ) {
+            if ( stages.get(i).getId().equals(stage.getId()) ) {
+                stages.set(i, stage);
+                return;
+            }
+        }
+        stages.add(stage);
+    }
+
+    /**
+     * Adds the stage in front of the stage with the given id, or at the end if there is none.
+     */
+    public void registerBefore(String id, DockStage<?> stage) {
+        unregister(stage.getId());
+        for ( int i = 0; i < stages.size(); i++ ) {
+            if ( stages.get(i).getId().equals(id) ) {
+                stages.add(i, stage);
+                return;
+            }
+        }
+        stages.add(stage);
+    }
+
+    public void unregister(String id) {
+        for ( int i = 0; i < stages.size(); i++ ) {
+            if ( stages.get(i).getId().equals(id) ) {
+                stages.remove(i);
+                return;
+            }
+        }
+    }
+
+    public List<DockStage<?>> getStages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    /**
+     * Plans and applies every applicable stage unless its fingerprint matches the record of the last dock.
+     * @param record May be null to run all applicable stages.
+     */
+    public void run(DockSnapshot dock, DockRecord record) {
+        for ( DockStage<?> stage : stages ) {
+            runStage(stage, dock, record);
+        }
+    }
+
+    /**
+     * Plans and applies a single stage if it is applicable and its fingerprint does not match the record.
+     * @param record May be null to run the stage if it is applicable.
+     */
+    public void runStage(DockStage<?> stage, DockSnapshot dock, DockRecord record) {
+        if ( !isDue(stage, dock, record) ) return;
+        long start = dock.metrics.start();
+        run(stage, dock);
+        dock.cargoChanged();
+        dock.metrics.stop(stage.getId(), start);
+    }
+
+    /**
+     * Counts the stage as not applicable or skipped if it is.
+     * @param record May be null.
+     * @return True if the stage is applicable and its fingerprint does not match the record.
+     */
+    public boolean isDue(DockStage<?> stage, DockSnapshot dock, DockRecord record) {
+        if ( !stage.isApplicable(dock) ) {
+            dock.metrics.count(DockMetrics.STAGES_NOT_APPLICABLE, 1);
+            return false;
+        }
+        if ( record != null && record.matches(stage.getId(), stage.fingerprint(dock)) ) {
+            dock.metrics.count(DockMetrics.STAGES_SKIPPED, 1);
+            return false;
+        }
+        return true;
+    }
+
+    private <P> P run(DockStage<P> stage, DockSnapshot dock) {
+        P plan = stage.plan(dock);
+        if ( plan != null ) stage.apply(plan, dock);
+        return plan;
+    }
+
+    /**
+     * Plans every applicable stage on the copied cargos of the dock. Each plan is applied to the copies so the next 
+     * stage plans against the result, stages that can not apply their plan to copies leave them unchanged.
+     * @return Stage ids mapped to their plans.
+     */
+    public Map<String,Object> plan(DockSnapshot dock) {
+        Map<String,Object> plans = new HashMap<>();
+        for ( DockStage<?> stage : stages ) {
+            if ( !stage.isApplicable(dock) ) continue;
+            Object plan = run(stage, dock);
+            if ( plan != null ) plans.put(stage.getId(), plan);
+        }
+        return plans;
+    }
+
+    /**
+     * Applies plans made by {@link #plan(DockSnapshot)} in the order of the stages.
+     */
+    public void apply(Map<String,Object> plans, DockSnapshot dock) {
+        for ( DockStage<?> stage : stages ) {
+            Object plan = plans.get(stage.getId());
+            if ( plan == null ) continue;
+            long start = dock.metrics.start();
+            apply(stage, plan, dock);
+            dock.metrics.stop(stage.getId(), start);
+        }
+        dock.cargoChanged();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <P> void apply(DockStage<P> stage, Object plan, DockSnapshot dock) {
+        stage.apply((P)plan, dock);
+    }
+
+    /**
+     * @return Ids of the applicable stages mapped to their fingerprints.
+     */
+    public Map<String,Integer> fingerprints(DockSnapshot dock) {
+        Map<String,Integer> fingerprints = new HashMap<>();
+        for ( DockStage<?> stage : stages ) {
+            if ( stage.isApplicable(dock) ) fingerprints.put(stage.getId(), stage.fingerprint(dock));
+        }
+        return fingerprints;
+    }
+
+    /**
+     * @return True if no applicable stage changed its fingerprint since the record was made.
+     */
+    public boolean isIdle(DockSnapshot dock, DockRecord record) {
+        for ( DockStage<?> stage : stages ) {
+            if ( stage.isApplicable(dock) && !record.matches(stage.getId(), stage.fingerprint(dock)) ) return false;
+        }
+        return true;
+    }
+
+    public int hashConfiguration() {
+        int hash = 0;
+        for ( DockStage<?> stage : stages ) {
+            hash = 31 * hash + stage.getId().hashCode();
+            hash = 31 * hash + stage.hashConfiguration();
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.campaign.CampaignUIAPI;
+import com.fs.starfarer.api.campaign.SectorEntityToken;
+import java.util.Map;
+
+/**
+ * The outcome of all stages for a dock, computed ahead of time. It may only be applied if the cargos and the
+ * configuration still have the fingerprints the plan was made from.
+ *
+ * @author Malte Schulze
+ */
+public class DockPlan {
+    public final String entityId;
+    public final CampaignUIAPI.CoreUITradeMode tradeMode;
+    public final int cargoFingerprint;
+    public final int configurationFingerprint;
+    /**
+     * Stage ids mapped to their plans, see {@link DockPipeline#plan(DockSnapshot)}.
+     */
+    public Map<String,Object> plans;
+
+    public DockPlan(SectorEntityToken interactionTarget, CampaignUIAPI.CoreUITradeMode tradeMode, int cargoFingerprint, int configurationFingerprint) {
+        this.entityId = interactionTarget.getId();
+        this.tradeMode = tradeMode;
+        this.cargoFingerprint = cargoFingerprint;
+        this.configurationFingerprint = configurationFingerprint;
+    }
+
+    public boolean isFor(SectorEntityToken interactionTarget, CampaignUIAPI.CoreUITradeMode tradeMode) {
+        return entityId.equals(interactionTarget.getId()) && this.tradeMode == tradeMode;
+    }
+
+    public boolean matches(SectorEntityToken interactionTarget, CampaignUIAPI.CoreUITradeMode tradeMode, int cargoFingerprint, int configurationFingerprint) {
+        return isFor(interactionTarget, tradeMode) && this.cargoFingerprint == cargoFingerprint && 
+                this.configurationFingerprint == configurationFingerprint;
+    }
+}
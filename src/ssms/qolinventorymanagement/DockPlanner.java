@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.EveryFrameScript;
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.campaign.CampaignFleetAPI;
+import com.fs.starfarer.api.campaign.SectorEntityToken;
+import com.fs.starfarer.api.util.IntervalUtil;
+import com.fs.starfarer.api.util.Misc;
+
+/**
+ * Watches the player fleet and prepares the dock once the fleet closes in on the market it is heading for, so the
+ * work does not land on the frame the player clicks the market.
+ *
+ * @author Malte Schulze
+ */
+public class DockPlanner implements EveryFrameScript {
+    /**
+     * Distance between the edges of fleet and target below which the dock is prepared.
+     */
+    public static final float PLANNING_RANGE = 500f;
+    
+    protected final CampaignPlugin plugin;
+    protected final IntervalUtil interval = new IntervalUtil(0.4f, 0.6f);
+
+    public DockPlanner(CampaignPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean isDone() {
+        return false;
+    }
+
+    @Override
+    public boolean runWhilePaused() {
+        return false;
+    }
+
+    @Override
+    public void advance(float amount) {
+        interval.advance(amount);
+        if ( !interval.intervalElapsed() ) return;
+        if ( Global.getSector().getCampaignUI().isShowingDialog() ) return;
+        CampaignFleetAPI fleet = Global.getSector().getPlayerFleet();
+        if ( fleet == null ) return;
+        SectorEntityToken target = fleet.getInteractionTarget();
+        if ( target == null || target.getMarket() == null || target.getContainingLocation() != fleet.getContainingLocation() ) return;
+        float distance = Misc.getDistance(fleet.getLocation(), target.getLocation()) - fleet.getRadius() - target.getRadius();
+        if ( distance > PLANNING_RANGE ) return;
+        plugin.prepareDock(target);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.campaign.CampaignUIAPI;
+import java.util.Map;
+
+/**
+ * What the inputs of each stage looked like once the last dock at a market completed. Running a stage again on 
+ * the same inputs does nothing so it can be skipped as long as its fingerprint still matches.
+ *
+ * @author Malte Schulze
+ */
+public class DockRecord {
+    public final CampaignUIAPI.CoreUITradeMode tradeMode;
+    /**
+     * Number of economy ticks at the time of the dock. Submarkets are only refreshed again after the economy ticked.
+     */
+    public final int economyTicks;
+    /**
+     * Stage ids mapped to their fingerprints, only applicable stages are recorded.
+     */
+    public final Map<String,Integer> fingerprints;
+
+    public DockRecord(CampaignUIAPI.CoreUITradeMode tradeMode, int economyTicks, Map<String,Integer> fingerprints) {
+        this.tradeMode = tradeMode;
+        this.economyTicks = economyTicks;
+        this.fingerprints = fingerprints;
+    }
+
+    public boolean matches(String stageId, int fingerprint) {
+        Integer recorded = fingerprints.get(stageId);
+        return recorded != null && recorded == fingerprint;
+    }
+
+    /**
+     * @return True if the submarkets have not restocked since the record was made.
+     */
+    public boolean isCurrent(CampaignUIAPI.CoreUITradeMode tradeMode, int economyTicks) {
+        return this.tradeMode == tradeMode && this.economyTicks == economyTicks;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.campaign.CampaignUIAPI;
+import com.fs.starfarer.api.campaign.CargoAPI;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
+import com.fs.starfarer.api.campaign.SectorEntityToken;
+import com.fs.starfarer.api.campaign.econ.MarketAPI;
+import com.fs.starfarer.api.campaign.econ.SubmarketAPI;
+import com.fs.starfarer.api.impl.campaign.submarkets.LocalResourcesSubmarketPlugin;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The cargos involved in docking at a market. A live snapshot hands out the actual cargos so changes apply to the
+ * game, a copied snapshot works on copies so a dock can be planned ahead of time without side effects.
+ *
+ * @author Malte Schulze
+ */
+public class DockSnapshot {
+    public final SectorEntityToken interactionTarget;
+    public final MarketAPI market;
+    public final CampaignUIAPI.CoreUITradeMode tradeMode;
+    public final SubmarketAPI storage, stockpile, primary, secondary;
+    public final DockMetrics metrics;
+    protected final boolean copied;
+    protected final Map<SubmarketAPI,CargoAPI> cargos = new HashMap<>();
+    protected final Map<CargoAPI,Integer> fingerprints = new IdentityHashMap<>();
+    protected CargoAPI fleetCargo;
+    protected CargoAPI leftovers;
+    protected StorageInventory inventory;
+    protected SubmarketRefresher refresher;
+    protected ItemIdCache itemIds;
+    protected KnownWeapons knownWeapons;
+    protected int economyTicks;
+
+    public DockSnapshot(SectorEntityToken interactionTarget, CampaignUIAPI.CoreUITradeMode tradeMode, boolean copied, DockMetrics metrics) {
+        this.interactionTarget = interactionTarget;
+        this.market = interactionTarget.getMarket();
+        this.tradeMode = tradeMode;
+        this.copied = copied;
+        this.metrics = metrics;
+        storage = market.getSubmarket("storage");
+        stockpile = market.getSubmarket("local_resources");
+        if ( tradeMode == CampaignUIAPI.CoreUITradeMode.OPEN ) {
+            primary = market.getSubmarket("open_market");
+            secondary = market.getSubmarket("generic_military");
+        } else if ( tradeMode == CampaignUIAPI.CoreUITradeMode.SNEAK ) {
+            primary = market.getSubmarket("black_market");
+            secondary = null;
+        } else {
+            primary = null;
+            secondary = null;
+        }
+    }
+
+    public boolean isCopied() {
+        return copied;
+    }
+
+    /**
+     * @return The weapons the player faction knows. Without a snapshot handed in one is taken for this dock.
+     */
+    public KnownWeapons getKnownWeapons() {
+        if ( knownWeapons == null ) knownWeapons = new KnownWeapons().update(Global.getSector().getPlayerFaction());
+        return knownWeapons;
+    }
+
+    public void setKnownWeapons(KnownWeapons knownWeapons) {
+        this.knownWeapons = knownWeapons;
+    }
+
+    /**
+     * @return Item ids resolved during this dock, shared by all stages.
+     */
+    public ItemIdCache getItemIds() {
+        if ( itemIds == null ) itemIds = new ItemIdCache(metrics);
+        return itemIds;
+    }
+
+    /**
+     * @return The inventory of all configured storages or null if the market is not one of them.
+     */
+    public StorageInventory getInventory() {
+        return inventory;
+    }
+
+    public void setInventory(StorageInventory inventory) {
+        this.inventory = inventory;
+    }
+
+    /**
+     * Adds items moved into the storage of a live dock to the inventory, or removes them for a negative sign.
+     */
+    public void storageChanged(CargoAPI moved, float sign) {
+        if ( inventory != null && !copied ) inventory.add(interactionTarget.getId(), moved, sign, getItemIds());
+    }
+
+    public CargoAPI getFleetCargo() {
+        if ( fleetCargo == null ) {
+            CargoAPI cargo = Global.getSector().getPlayerFleet().getCargo();
+            fleetCargo = copied ? cargo.createCopy() : cargo;
+        }
+        return fleetCargo;
+    }
+
+    /**
+     * Reads the cargo of a submarket for a stage. If the snapshot refreshes on read the submarket updates its stock 
+     * first.
+     */
+    public CargoAPI getCargo(SubmarketAPI submarket) {
+        if ( submarket == null ) return null;
+        if ( refresher != null ) refresher.refresh(submarket, economyTicks, metrics);
+        return peekCargo(submarket);
+    }
+
+    /**
+     * @return The cargo of the submarket as it is without letting it update its stock.
+     */
+    public CargoAPI peekCargo(SubmarketAPI submarket) {
+        if ( submarket == null ) return null;
+        CargoAPI cargo = cargos.get(submarket);
+        if ( cargo == null ) {
+            cargo = copied ? submarket.getCargo().createCopy() : submarket.getCargo();
+            cargos.put(submarket, cargo);
+        }
+        return cargo;
+    }
+
+    /**
+     * @return Free leftovers of the stockpile or null if the market has no stockpile.
+     */
+    public CargoAPI getStockpileLeftovers() {
+        if ( stockpile == null ) return null;
+        if ( refresher != null ) refresher.refresh(stockpile, economyTicks, metrics);
+        return peekStockpileLeftovers();
+    }
+
+    protected CargoAPI peekStockpileLeftovers() {
+        if ( stockpile == null ) return null;
+        if ( leftovers == null ) {
+            CargoAPI cargo = ((LocalResourcesSubmarketPlugin)stockpile.getPlugin()).getLeft();
+            leftovers = copied ? cargo.createCopy() : cargo;
+        }
+        return leftovers;
+    }
+
+    /**
+     * Lets submarkets update their stock as they would when the player opens them, the first time a stage reads their 
+     * cargo during the economy tick. Only valid on live snapshots.
+     */
+    public void refreshOnRead(SubmarketRefresher refresher, int economyTicks) {
+        if ( copied ) return;
+        this.refresher = refresher;
+        this.economyTicks = economyTicks;
+    }
+
+    /**
+     * Refreshes all submarkets of the dock now instead of on first read, so a fingerprint taken afterwards covers the 
+     * stock the stages are going to read.
+     */
+    public void refreshAll() {
+        for ( SubmarketAPI submarket : new SubmarketAPI[]{storage, stockpile, primary, secondary} ) {
+            getCargo(submarket);
+        }
+    }
+
+    /**
+     * Hash over the contents of all cargos involved in the dock. Stack order does not matter. Submarkets are not 
+     * refreshed for this.
+     */
+    public int fingerprint() {
+        int hash = cargoFingerprint(getFleetCargo());
+        for ( SubmarketAPI submarket : new SubmarketAPI[]{storage, stockpile, primary, secondary} ) {
+            hash = 31 * hash + cargoFingerprint(peekCargo(submarket));
+        }
+        return 31 * hash + cargoFingerprint(peekStockpileLeftovers());
+    }
+
+    /**
+     * Fingerprint of one of the cargos of this dock. The result is remembered until {@link #cargoChanged()} is called.
+     * @return The fingerprint or zero for a missing cargo.
+     */
+    public int cargoFingerprint(CargoAPI cargo) {
+        if ( cargo == null ) return 0;
+        Integer hash = fingerprints.get(cargo);
+        if ( hash == null ) {
+            hash = fingerprint(cargo);
+            fingerprints.put(cargo, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Must be called after cargos of this dock were changed so fingerprints are computed anew.
+     */
+    public void cargoChanged() {
+        fingerprints.clear();
+    }
+
+    /**
+     * Hash over the stacks of the cargo regardless of their order. Each stack is mixed before the stacks are summed, 
+     * otherwise moving the same sizes between items would keep the sum.
+     */
+    public static int fingerprint(CargoAPI cargo) {
+        int hash = 0;
+        for ( CargoStackAPI stack : cargo.getStacksCopy() ) {
+            int stackHash = stack.getType().ordinal();
+            stackHash = 31 * stackHash + (stack.getData() != null ? stack.getData().hashCode() : 0);
+            stackHash = mix(stackHash) ^ Float.floatToIntBits(stack.getSize());
+            hash += mix(stackHash);
+        }
+        return hash;
+    }
+
+    /**
+     * Finalizer of MurmurHash3, every input bit affects every output bit.
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
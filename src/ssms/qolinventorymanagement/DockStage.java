@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+/**
+ * A feature that runs while docking at a market. Stages are run in order by the {@link DockPipeline} and share the 
+ * cargos, item ids and inventory of the {@link DockSnapshot}, so a stage should read its inputs from there instead 
+ * of scanning the game on its own.
+ *
+ * @param <P> The plan the stage makes and applies.
+ * @author Malte Schulze
+ */
+public interface DockStage<P> {
+    /**
+     * @return Unique id of the stage, also the name of its timer in the {@link DockMetrics}.
+     */
+    String getId();
+
+    /**
+     * Cheap preconditions such as the market being a configured storage or a rule being active. Called before any 
+     * cargo is read, so it must not read cargo itself.
+     */
+    boolean isApplicable(DockSnapshot dock);
+
+    /**
+     * @return Hash over the configuration of the stage. A prepared dock is discarded when it changed.
+     */
+    int hashConfiguration();
+
+    /**
+     * @return Hash over everything the stage reads. If it matches the one recorded on the last dock at the market the 
+     * stage is skipped.
+     */
+    int fingerprint(DockSnapshot dock);
+
+    /**
+     * Decides what to do without changing any cargo. The dock may hold copies of the cargos.
+     * @return The plan or null if there is nothing to do.
+     */
+    P plan(DockSnapshot dock);
+
+    /**
+     * Applies a plan made for this dock or for a copy of it.
+     */
+    void apply(P plan, DockSnapshot dock);
+}
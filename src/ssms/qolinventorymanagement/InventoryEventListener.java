@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.campaign.BaseCampaignEventListener;
+import com.fs.starfarer.api.campaign.PlanetAPI;
+import com.fs.starfarer.api.campaign.PlayerMarketTransaction;
+import com.fs.starfarer.api.campaign.econ.MarketAPI;
+import com.fs.starfarer.api.campaign.listeners.ColonyDecivListener;
+import com.fs.starfarer.api.campaign.listeners.PlayerColonizationListener;
+
+/**
+ * Transient listener that keeps the runtime caches of the {@link CampaignPlugin} in line with the campaign.
+ * It is registered anew on every game load, as campaign event listener and with the listener manager.
+ *
+ * @author Malte Schulze
+ */
+public class InventoryEventListener extends BaseCampaignEventListener implements PlayerColonizationListener, ColonyDecivListener {
+    protected final CampaignPlugin plugin;
+
+    public InventoryEventListener(CampaignPlugin plugin) {
+        super(false);
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void reportEconomyTick(int iterIndex) {
+        plugin.getPriceCache().invalidate();
+        plugin.getStorageRegistry().invalidate();
+        plugin.getSectorIndex().markEconomyChanged();
+        plugin.getTradeModeResolver().invalidate();
+        plugin.markEconomyTick();
+    }
+
+    @Override
+    public void reportPlayerReputationChange(String faction, float delta) {
+        plugin.getPriceCache().invalidate();
+        plugin.getTradeModeResolver().invalidate(faction);
+    }
+
+    @Override
+    public void reportPlayerMarketTransaction(PlayerMarketTransaction transaction) {
+        if ( transaction.getMarket() != null ) plugin.getPriceCache().invalidate(transaction.getMarket().getId());
+        if ( plugin.getActiveJob() != null ) plugin.getActiveJob().cargoTouched();
+    }
+
+    @Override
+    public void reportPlayerColonizedPlanet(PlanetAPI planet) {
+        plugin.getStorageRegistry().invalidate(planet.getMarket());
+        plugin.getSectorIndex().update(planet.getMarket());
+    }
+
+    @Override
+    public void reportPlayerAbandonedColony(MarketAPI colony) {
+        plugin.getStorageRegistry().invalidate(colony);
+        plugin.getSectorIndex().update(colony);
+    }
+
+    @Override
+    public void reportColonyAboutToBeDecivilized(MarketAPI market, boolean fullyDestroyed) {
+    }
+
+    @Override
+    public void reportColonyDecivilized(MarketAPI market, boolean fullyDestroyed) {
+        plugin.getStorageRegistry().invalidate(market);
+        plugin.getSectorIndex().update(market);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import ssms.qol.util.UtilItems;
+
+/**
+ * All items of the game sorted by their label, with a search index over the words of the labels and memoized labels
+ * for trade rules. The catalogue is built on first use and lives as long as the campaign plugin of the loaded game.
+ * Every edit of a rule produces a new label so only the most recently shown ones are kept.
+ *
+ * @author Malte Schulze
+ */
+public class ItemCatalogue {
+    protected final List<String> uniqueIds = new ArrayList<>();
+    protected final Map<String,String> labels = new HashMap<>();
+    //distinct lower case words of all labels, sorted, and for each the positions of the items using it
+    protected String[] words;
+    protected int[][] wordItems;
+    protected static final int RULE_LABELS = 256;
+    protected final Map<RuleLabel,String> ruleLabels = new LinkedHashMap<RuleLabel,String>(RULE_LABELS, 0.75f, true) {
+        private static final long serialVersionUID = 6127450923817153042L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<RuleLabel,String> eldest) {
+            return size() > RULE_LABELS;
+        }
+    };
+
+    /**
+     * Key of a memoized rule label.
+     */
+    protected static class RuleLabel {
+        protected final String itemId;
+        protected final Integer demand;
+        protected final Float minSellPrice, maxBuyPrice;
+
+        protected RuleLabel(String itemId, Integer demand, Float minSellPrice, Float maxBuyPrice) {
+            this.itemId = itemId;
+            this.demand = demand;
+            this.minSellPrice = minSellPrice;
+            this.maxBuyPrice = maxBuyPrice;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if ( !(o instanceof RuleLabel) ) return false;
+            RuleLabel other = (RuleLabel) o;
+            return Objects.equals(itemId, other.itemId) && Objects.equals(demand, other.demand) && 
+                    Objects.equals(minSellPrice, other.minSellPrice) && Objects.equals(maxBuyPrice, other.maxBuyPrice);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(itemId, demand, minSellPrice, maxBuyPrice);
+        }
+    }
+
+    public ItemCatalogue() {
+        this(UtilItems.getInstance().getAllItemIds());
+    }
+
+    public ItemCatalogue(Collection<UtilItems.ItemId> items) {
+        for ( UtilItems.ItemId item : items ) {
+            if ( item.uniqueId == null || labels.containsKey(item.uniqueId) ) continue;
+            uniqueIds.add(item.uniqueId);
+            labels.put(item.uniqueId, item.label != null ? item.label : item.uniqueId);
+        }
+        Collections.sort(uniqueIds, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int c = labels.get(a).compareToIgnoreCase(labels.get(b));
+                return c != 0 ? c : a.compareTo(b);
+            }
+        });
+        index();
+    }
+
+    /**
+     * @return Unique ids of all items sorted by label. The list is a copy that may be changed.
+     */
+    public List<String> getUniqueIds() {
+        return new ArrayList<>(uniqueIds);
+    }
+
+    /**
+     * @return The label of the item or the unique id itself for unknown items.
+     */
+    public String getLabel(String uniqueId) {
+        String label = labels.get(uniqueId);
+        return label != null ? label : uniqueId;
+    }
+
+    /**
+     * @param query Words separated by anything but letters and digits. Each must start a word of the label.
+     * @return Unique ids of the matching items sorted by label. All items for an empty query.
+     */
+    public List<String> search(String query) {
+        String[] terms = query != null ? tokenize(query) : new String[0];
+        if ( terms.length == 0 ) return getUniqueIds();
+        BitSet matches = null;
+        for ( String term : terms ) {
+            BitSet termMatches = new BitSet(uniqueIds.size());
+            int word = Arrays.binarySearch(words, term);
+            if ( word < 0 ) word = -word - 1;
+            for ( ; word < words.length && words[word].startsWith(term); word++ ) {
+                for ( int item : wordItems[word] ) termMatches.set(item);
+            }
+            if ( matches == null ) matches = termMatches;
+            else matches.and(termMatches);
+            if ( matches.isEmpty() ) break;
+        }
+        List<String> result = new ArrayList<>(matches.cardinality());
+        for ( int item = matches.nextSetBit(0); item >= 0; item = matches.nextSetBit(item + 1) ) {
+            result.add(uniqueIds.get(item));
+        }
+        return result;
+    }
+
+    /**
+     * @return The summary shown for a trade rule, built once per distinct rule.
+     */
+    public String getRuleLabel(String itemId, Integer demand, Float minSellPrice, Float maxBuyPrice) {
+        RuleLabel key = new RuleLabel(itemId, demand, minSellPrice, maxBuyPrice);
+        String label = ruleLabels.get(key);
+        if ( label == null ) {
+            label = new StringBuilder().append(getLabel(itemId)).append(", =").append(demand).append(" >").append(minSellPrice)
+                    .append(" <").append(maxBuyPrice).toString();
+            ruleLabels.put(key, label);
+        }
+        return label;
+    }
+
+    protected void index() {
+        Map<String,List<Integer>> index = new TreeMap<>();
+        for ( int item = 0; item < uniqueIds.size(); item++ ) {
+            for ( String word : tokenize(labels.get(uniqueIds.get(item))) ) {
+                List<Integer> items = index.get(word);
+                if ( items == null ) {
+                    items = new ArrayList<>();
+                    index.put(word, items);
+                }
+                //items are visited in order so a repeated word in one label only needs to be checked against the last
+                if ( items.isEmpty() || items.get(items.size() - 1) != item ) items.add(item);
+            }
+        }
+        words = new String[index.size()];
+        wordItems = new int[index.size()][];
+        int i = 0;
+        for ( Map.Entry<String,List<Integer>> entry : index.entrySet() ) {
+            words[i] = entry.getKey();
+            int[] items = new int[entry.getValue().size()];
+            for ( int j = 0; j < items.length; j++ ) items[j] = entry.getValue().get(j);
+            wordItems[i++] = items;
+        }
+    }
+
+    protected static String[] tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for ( int i = 0; i <= text.length(); i++ ) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if ( wordChar && start < 0 ) start = i;
+            else if ( !wordChar && start >= 0 ) {
+                tokens.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return tokens.toArray(new String[tokens.size()]);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.campaign.CargoAPI;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import ssms.qol.util.UtilItems;
+
+/**
+ * Resolves the item ids of stacks once per item type and data. A cache lives as long as the dock it belongs to so
+ * every stage reading the same item shares the result.
+ *
+ * @author Malte Schulze
+ */
+public class ItemIdCache {
+    protected static final UtilItems.ItemId UNKNOWN = new UtilItems.ItemId();
+
+    protected final Map<CargoAPI.CargoItemType,Map<Object,UtilItems.ItemId>> ids = new EnumMap<>(CargoAPI.CargoItemType.class);
+    protected final DockMetrics metrics;
+
+    /**
+     * @param metrics Counts the resolved items, may be null.
+     */
+    public ItemIdCache(DockMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The item id of the stack or null if it can not be resolved.
+     */
+    public UtilItems.ItemId getItemId(CargoStackAPI stack) {
+        Map<Object,UtilItems.ItemId> byData = ids.get(stack.getType());
+        if ( byData == null ) {
+            byData = new HashMap<>();
+            ids.put(stack.getType(), byData);
+        }
+        UtilItems.ItemId itemId = byData.get(stack.getData());
+        if ( itemId == null ) {
+            itemId = UtilItems.getInstance().getItemId(stack);
+            if ( itemId == null ) itemId = UNKNOWN;
+            byData.put(stack.getData(), itemId);
+            if ( metrics != null ) metrics.count(DockMetrics.ITEM_IDS_RESOLVED, 1);
+        }
+        return itemId != UNKNOWN ? itemId : null;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.campaign.FactionAPI;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Snapshot of the weapon blueprints the player faction knows. Weapon ids are interned to indices that stay the same 
+ * for the session and the known weapons are kept as bits over those indices. A changed number of known weapons is 
+ * noticed on every dock. Weapons that were learned and forgotten in equal numbers are only noticed by comparing the 
+ * whole set, which happens at most once per economy tick.
+ *
+ * @author Malte Schulze
+ */
+public class KnownWeapons {
+    protected final Map<String,Integer> indices = new HashMap<>();
+    protected BitSet known = new BitSet();
+    protected int count = 0;
+    protected int revision = 0;
+    protected int comparedAt = -1;
+
+    /**
+     * Takes a new snapshot if the number of known weapons changed, or if the weapons differ once the economy ticked 
+     * since they were last compared.
+     * @return This snapshot.
+     */
+    public KnownWeapons update(FactionAPI faction, int economyTicks) {
+        Set<String> weapons = faction.getKnownWeapons();
+        if ( weapons.size() == count && economyTicks == comparedAt ) return this;
+        comparedAt = economyTicks;
+        return update(weapons);
+    }
+
+    /**
+     * Takes a new snapshot if the known weapons of the faction differ from this one, comparing the whole set.
+     * @return This snapshot.
+     */
+    public KnownWeapons update(FactionAPI faction) {
+        return update(faction.getKnownWeapons());
+    }
+
+    protected KnownWeapons update(Set<String> weapons) {
+        if ( weapons.size() == count && knowsAll(weapons) ) return this;
+        BitSet bits = new BitSet(indices.size());
+        for ( String weaponId : weapons ) {
+            bits.set(index(weaponId));
+        }
+        known = bits;
+        count = weapons.size();
+        revision++;
+        return this;
+    }
+
+    private boolean knowsAll(Set<String> weapons) {
+        for ( String weaponId : weapons ) {
+            if ( !knows(weaponId) ) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The interned index of the weapon, weapons seen for the first time are assigned the next free index.
+     */
+    public int index(String weaponId) {
+        Integer index = indices.get(weaponId);
+        if ( index == null ) {
+            index = indices.size();
+            indices.put(weaponId, index);
+        }
+        return index;
+    }
+
+    public boolean knows(int index) {
+        return known.get(index);
+    }
+
+    public boolean knows(String weaponId) {
+        Integer index = indices.get(weaponId);
+        return index != null && known.get(index);
+    }
+
+    /**
+     * @return A number that changes whenever a new snapshot was taken.
+     */
+    public int getRevision() {
+        return revision;
+    }
+}
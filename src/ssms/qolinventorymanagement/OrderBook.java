@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import java.util.Arrays;
+
+/**
+ * Orders the offers of a {@link TradeSnapshot} per item by price. Only items that have been registered through
+ * {@link #demand(int, float)} are admitted and offers above the highest accepted price are dropped. The admitted offers
+ * of each item form a binary heap on the price, so only as many offers are ordered as are actually bought from instead
+ * of sorting all of them. Offers are referred to by their index in the snapshot and all arrays are kept between docks.
+ *
+ * @author Malte Schulze
+ */
+public class OrderBook {
+    protected TradeSnapshot snapshot;
+    //per item index, the heap of an item covers order[heapStart, heapEnd)
+    protected boolean[] demanded = new boolean[64];
+    protected float[] maxPrice = new float[64];
+    protected int[] heapStart = new int[64];
+    protected int[] heapEnd = new int[64];
+    protected int[] demandedItems = new int[64];
+    protected int demandedCount = 0;
+    //admitted offers in the order they were collected and grouped into one heap per item
+    protected int[] admitted = new int[256];
+    protected int[] order = new int[256];
+    //per offer index
+    protected float[] remaining = new float[256];
+
+    public void reset(TradeSnapshot snapshot) {
+        for ( int i = 0; i < demandedCount; i++ ) {
+            demanded[demandedItems[i]] = false;
+        }
+        demandedCount = 0;
+        this.snapshot = snapshot;
+        int items = snapshot.getItemCount();
+        if ( demanded.length < items ) {
+            int size = Math.max(items, demanded.length * 2);
+            demanded = Arrays.copyOf(demanded, size);
+            maxPrice = Arrays.copyOf(maxPrice, size);
+            heapStart = Arrays.copyOf(heapStart, size);
+            heapEnd = Arrays.copyOf(heapEnd, size);
+        }
+    }
+
+    /**
+     * Registers an item that should be bought. Registering the same item again keeps the higher price limit.
+     */
+    public void demand(int item, float maxPrice) {
+        if ( !demanded[item] ) {
+            if ( demandedCount == demandedItems.length ) demandedItems = Arrays.copyOf(demandedItems, demandedCount * 2);
+            demandedItems[demandedCount++] = item;
+            demanded[item] = true;
+            this.maxPrice[item] = maxPrice;
+            heapStart[item] = 0;
+            heapEnd[item] = 0;
+        } else if ( this.maxPrice[item] < maxPrice ) this.maxPrice[item] = maxPrice;
+    }
+
+    public boolean isEmpty() {
+        return demandedCount == 0;
+    }
+
+    /**
+     * Admits the acceptable offers of the snapshot and builds the heap of each item in linear time. Must be called 
+     * after all items were demanded.
+     */
+    public void build() {
+        int offers = snapshot.getOfferCount();
+        if ( order.length < offers ) {
+            order = new int[Math.max(offers, order.length * 2)];
+            admitted = new int[order.length];
+        }
+        if ( remaining.length < offers ) remaining = new float[Math.max(offers, remaining.length * 2)];
+        //count the admitted offers per item in heapEnd
+        int admittedCount = 0;
+        for ( int offer = 0; offer < offers; offer++ ) {
+            int item = snapshot.getOfferItem(offer);
+            float quantity = snapshot.getOfferQuantity(offer);
+            if ( !demanded[item] || quantity <= 0f || snapshot.getOfferPrice(offer) > maxPrice[item] ) continue;
+            remaining[offer] = quantity;
+            admitted[admittedCount++] = offer;
+            heapEnd[item]++;
+        }
+        //give each item its range and fill it in collection order
+        int next = 0;
+        for ( int i = 0; i < demandedCount; i++ ) {
+            int item = demandedItems[i];
+            int count = heapEnd[item];
+            heapStart[item] = next;
+            heapEnd[item] = next;
+            next += count;
+        }
+        for ( int i = 0; i < admittedCount; i++ ) {
+            int offer = admitted[i];
+            order[heapEnd[snapshot.getOfferItem(offer)]++] = offer;
+        }
+        for ( int i = 0; i < demandedCount; i++ ) {
+            int item = demandedItems[i];
+            int size = heapEnd[item] - heapStart[item];
+            for ( int node = size / 2 - 1; node >= 0; node-- ) {
+                siftDown(heapStart[item], size, node);
+            }
+        }
+    }
+
+    /**
+     * @return The index of the cheapest offer of the item that is not used up or -1 if there is none.
+     */
+    public int cheapest(int item) {
+        if ( !demanded[item] ) return -1;
+        int base = heapStart[item];
+        //used up offers are only removed once they reach the top
+        while ( heapEnd[item] > base && remaining[order[base]] <= 0f ) {
+            int size = --heapEnd[item] - base;
+            order[base] = order[base + size];
+            siftDown(base, size, 0);
+        }
+        return heapEnd[item] > base ? order[base] : -1;
+    }
+
+    public float getRemaining(int offer) {
+        return remaining[offer];
+    }
+
+    /**
+     * Takes the given quantity from the offer.
+     */
+    public void consume(int offer, float quantity) {
+        remaining[offer] -= quantity;
+    }
+
+    /**
+     * Moves the node of the heap starting at base down until neither child is cheaper.
+     */
+    protected void siftDown(int base, int size, int node) {
+        int offer = order[base + node];
+        while ( true ) {
+            int child = 2 * node + 1;
+            if ( child >= size ) break;
+            if ( child + 1 < size && before(order[base + child + 1], order[base + child]) ) child++;
+            if ( !before(order[base + child], offer) ) break;
+            order[base + node] = order[base + child];
+            node = child;
+        }
+        order[base + node] = offer;
+    }
+
+    /**
+     * Orders offers of the same item by price and then by offer index so equal prices keep the order the offers were 
+     * collected in.
+     */
+    protected boolean before(int a, int b) {
+        float priceA = snapshot.getOfferPrice(a), priceB = snapshot.getOfferPrice(b);
+        if ( priceA != priceB ) return priceA < priceB;
+        return a < b;
+    }
+}
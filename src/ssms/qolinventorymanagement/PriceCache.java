@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.campaign.CampaignUIAPI;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
+import com.fs.starfarer.api.campaign.econ.MarketAPI;
+import com.fs.starfarer.api.campaign.econ.SubmarketAPI;
+import com.fs.starfarer.api.impl.campaign.submarkets.LocalResourcesSubmarketPlugin;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import ssms.qol.util.UtilTrade;
+
+/**
+ * Remembers unit prices per market, submarket, trade mode, item and stack size. Tariffs and quantity pricing are
+ * not linear in the size, so every size is priced on its own. Lookups walk nested maps and allocate nothing once
+ * an entry exists. The cache is cleared by {@link InventoryEventListener} whenever the economy ticks, the player's
+ * reputation changes or the player trades on a market.
+ *
+ * @author Malte Schulze
+ */
+public class PriceCache {
+    //market id -> submarket spec id -> trade mode -> unique item id -> unit price per stack size
+    protected final Map<String,Map<String,Map<CampaignUIAPI.CoreUITradeMode,Map<String,SizePrices>>>> buyPrices = new HashMap<>();
+    protected final Map<String,Float> stockpilePrices = new HashMap<>();
+    protected final DockMetrics metrics;
+    protected int epoch = 0;
+
+    public PriceCache(DockMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return Price per unit for buying the stack from the submarket.
+     */
+    public float getBuyPrice(SubmarketAPI submarket, CargoStackAPI stack, String uniqueId, CampaignUIAPI.CoreUITradeMode tradeMode) {
+        MarketAPI market = submarket.getMarket();
+        Map<String,Map<CampaignUIAPI.CoreUITradeMode,Map<String,SizePrices>>> submarkets = buyPrices.get(market.getId());
+        if ( submarkets == null ) {
+            submarkets = new HashMap<>();
+            buyPrices.put(market.getId(), submarkets);
+        }
+        Map<CampaignUIAPI.CoreUITradeMode,Map<String,SizePrices>> tradeModes = submarkets.get(submarket.getSpecId());
+        if ( tradeModes == null ) {
+            tradeModes = new EnumMap<>(CampaignUIAPI.CoreUITradeMode.class);
+            submarkets.put(submarket.getSpecId(), tradeModes);
+        }
+        Map<String,SizePrices> prices = tradeModes.get(tradeMode);
+        if ( prices == null ) {
+            prices = new HashMap<>();
+            tradeModes.put(tradeMode, prices);
+        }
+        SizePrices sizes = prices.get(uniqueId);
+        if ( sizes == null ) {
+            sizes = new SizePrices();
+            prices.put(uniqueId, sizes);
+        }
+        int index = sizes.indexOf(stack.getSize());
+        if ( index < 0 ) {
+            long start = metrics.start();
+            index = sizes.add(stack.getSize(), UtilTrade.getInstance().priceForBuying(stack, market) / stack.getSize());
+            metrics.stop(DockMetrics.PRICING, start);
+        }
+        return sizes.unitPrices[index];
+    }
+
+    /**
+     * @return Price per unit for taking the stack out of the stockpile.
+     */
+    public float getStockpilePrice(CargoStackAPI stack) {
+        if ( !stack.isCommodityStack() ) return stack.getBaseValuePerUnit();
+        String commodityId = stack.getCommodityId();
+        Float price = stockpilePrices.get(commodityId);
+        if ( price == null ) {
+            price = (float)LocalResourcesSubmarketPlugin.getStockpilingUnitPrice(stack.getResourceIfResource(), false);
+            stockpilePrices.put(commodityId, price);
+        }
+        return price;
+    }
+
+    /**
+     * @return A counter that changes whenever cached prices were dropped.
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public void invalidate() {
+        buyPrices.clear();
+        stockpilePrices.clear();
+        epoch++;
+    }
+
+    public void invalidate(String marketId) {
+        buyPrices.remove(marketId);
+        epoch++;
+    }
+
+    /**
+     * Unit prices of one item by stack size. An item comes in few distinct sizes so they are searched in order.
+     */
+    protected static class SizePrices {
+        protected float[] sizes = new float[2];
+        protected float[] unitPrices = new float[2];
+        protected int count = 0;
+
+        protected int indexOf(float size) {
+            for ( int i = 0; i < count; i++ ) {
+                if ( sizes[i] == size ) return i;
+            }
+            return -1;
+        }
+
+        protected int add(float size, float unitPrice) {
+            if ( count == sizes.length ) {
+                sizes = Arrays.copyOf(sizes, count * 2);
+                unitPrices = Arrays.copyOf(unitPrices, count * 2);
+            }
+            sizes[count] = size;
+            unitPrices[count] = unitPrice;
+            return count++;
+        }
+    }
+}
@@ -19,14 +19,10 @@ package ssms.qolinventorymanagement;
 
 import com.fs.starfarer.api.BaseModPlugin;
 import com.fs.starfarer.api.Global;
-import com.fs.starfarer.api.campaign.SectorEntityToken;
-import com.fs.starfarer.api.campaign.StarSystemAPI;
 import com.fs.starfarer.campaign.CampaignEngine;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.Callable;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -41,9 +37,9 @@ import ssms.qol.properties.PropertyConfigurationInteger;
 import ssms.qol.properties.PropertyConfigurationListContainer;
 import ssms.qol.properties.PropertyConfigurationListSelectable;
 import ssms.qol.properties.PropertyConfigurationSelectable;
+import ssms.qol.properties.PropertyConfigurationString;
 import ssms.qol.properties.PropertyValueGetter;
 import ssms.qol.properties.PropertyValueSetter;
-import ssms.qol.util.UtilItems;
 
 /**
  *
@@ -59,6 +55,7 @@ public class SSMSQoLInventoryManagementModPlugin extends BaseModPlugin {
     @Override
     public void onGameLoad(boolean newGame) {
         final Logger logger = Global.getLogger(SSMSQoLInventoryManagementModPlugin.class);
+        TemplateLibrary.reload();
         CampaignPlugin cp = null;
         List<com.fs.starfarer.api.campaign.CampaignPlugin> plugins = CampaignEngine.getInstance().getPlugins();
         for ( com.fs.starfarer.api.campaign.CampaignPlugin plugin : plugins ) {
@@ -73,9 +70,19 @@ public class SSMSQoLInventoryManagementModPlugin extends BaseModPlugin {
             Global.getSector().registerPlugin(cp);
             logger.log(Level.INFO, "plugin created");
         }
+        InventoryEventListener listener = new InventoryEventListener(cp);
+        Global.getSector().addTransientListener(listener);
+        Global.getSector().getListenerManager().addListener(listener, true);
+        Global.getSector().addTransientScript(new DockPlanner(cp));
+        cp.syncTemplateVersions();
         configure(cp);
     }
     
+    protected static int templateVersion(String template) {
+        TemplateLibrary.Template t = TemplateLibrary.getInstance().get(template);
+        return t != null ? t.version : 0;
+    }
+    
     protected void configure(final CampaignPlugin cp) {
         PropertiesContainerConfigurationFactory confFactory = PropertiesContainerConfigurationFactory.getInstance();
         PropertiesContainerConfiguration<WeaponStorage> confWS = confFactory.getOrCreatePropertiesContainerConfiguration("SSMSQoLInventoryManagementWeaponStorage", WeaponStorage.class);
@@ -88,39 +95,17 @@ public class SSMSQoLInventoryManagementModPlugin extends BaseModPlugin {
         }, new PropertyValueSetter<WeaponStorage, List>() {
             @Override
             public void set(WeaponStorage sourceObject, List value) {
-                sourceObject.entityIds = value;
+                sourceObject.setEntityIds(value);
             }
         }, true, String.class) {
-            private final Map<Object,String> labelCache = new HashMap<>();
-            
             @Override
             public List buildOptions() {
-                List<String> markets = new ArrayList<>();
-                for ( StarSystemAPI ss : Global.getSector().getStarSystems() ) {
-                    for ( SectorEntityToken token : ss.getAllEntities() ) {
-                        if ( WeaponStorage.qualifiesAsStorage(token) ) {
-                            markets.add(token.getId());
-                        }
-                    }
-                }
-                return markets;
+                return cp.getSectorIndex().getStorageIds();
             }
 
             @Override
             public String getOptionLabel(Object o) {
-                String label = labelCache.get(o);
-                if ( label == null ) {
-                    outer : for ( StarSystemAPI ss : Global.getSector().getStarSystems() ) {
-                        for ( SectorEntityToken token : ss.getAllEntities() ) {
-                            if ( o.equals(token.getId()) ) {
-                                label = token.getName();
-                                labelCache.put(o, label);
-                                break outer;
-                            }
-                        }
-                    }
-                }
-                return label != null ? label : (String)o;
+                return cp.getSectorIndex().getLabel((String)o);
             }
         });
         confWS.addProperty(new PropertyConfigurationInteger<>("threshold","Threshold","Store up to this threshold of a single weapon, excess is transfered to the fleets cargo.",1000,20, 
@@ -135,6 +120,18 @@ public class SSMSQoLInventoryManagementModPlugin extends BaseModPlugin {
                 sourceObject.threshold = value;
             }
         }, false, 0, Integer.MAX_VALUE));
+        confWS.addProperty(new PropertyConfigurationBoolean<>("sectorWideThreshold","Sector wide Threshold","If true then the threshold applies to the weapons of all configured storages together instead of each storage on its own.",false,25, 
+                new PropertyValueGetter<WeaponStorage, Boolean>() {
+            @Override
+            public Boolean get(WeaponStorage sourceObject) {
+                return sourceObject.sectorWideThreshold;
+            }
+        }, new PropertyValueSetter<WeaponStorage, Boolean>() {
+            @Override
+            public void set(WeaponStorage sourceObject, Boolean value) {
+                sourceObject.sectorWideThreshold = value;
+            }
+        }, false));
         confWS.addProperty(new PropertyConfigurationBoolean<>("keepWeaponsWithoutBlueprint","Keep unknown Weapons","If true then weapons for which the blueprint is not known will be kept in storage even in excess of the threshold.",true,30, 
                 new PropertyValueGetter<WeaponStorage, Boolean>() {
             @Override
@@ -164,45 +161,30 @@ public class SSMSQoLInventoryManagementModPlugin extends BaseModPlugin {
         }, new PropertyValueSetter<SafeStorage, List>() {
             @Override
             public void set(SafeStorage sourceObject, List value) {
-                sourceObject.entityIds = value;
+                sourceObject.setEntityIds(value);
             }
         }, true, String.class) {
-            private final Map<Object,String> labelCache = new HashMap<>();
-            
             @Override
             public List buildOptions() {
-                List<String> markets = new ArrayList<>();
-                for ( StarSystemAPI ss : Global.getSector().getStarSystems() ) {
-                    for ( SectorEntityToken token : ss.getAllEntities() ) {
-                        if ( SafeStorage.qualifiesAsStorage(token) ) {
-                            markets.add(token.getId());
-                        }
-                    }
-                }
-                return markets;
+                return cp.getSectorIndex().getStorageIds();
             }
 
             @Override
             public String getOptionLabel(Object o) {
-                String label = labelCache.get(o);
-                if ( label == null ) {
-                    outer : for ( StarSystemAPI ss : Global.getSector().getStarSystems() ) {
-                        for ( SectorEntityToken token : ss.getAllEntities() ) {
-                            if ( o.equals(token.getId()) ) {
-                                label = token.getName();
-                                labelCache.put(o, label);
-                                break outer;
-                            }
-                        }
-                    }
-                }
-                if ( label != null ) return label;
-                else {
-                    labelCache.put(o, (String)o);
-                    return (String)o;
-                }
+                return cp.getSectorIndex().getLabel((String)o);
             }
         });
+        confSS.addProperty(new PropertyConfigurationString<>("itemFilter","Item Filter","Only offers items whose name has words starting with the given words when picking items. Not saved.","",5,new PropertyValueGetter<SafeStorage, String>() {
+            @Override
+            public String get(SafeStorage sourceObject) {
+                return sourceObject.itemFilter;
+            }
+        }, new PropertyValueSetter<SafeStorage, String>() {
+            @Override
+            public void set(SafeStorage sourceObject, String value) {
+                sourceObject.itemFilter = value;
+            }
+        }, false));
         confSS.addProperty(new PropertyConfigurationListSelectable<SafeStorage>("itemsToStore","Items","A list of items that will be moved into safe storage.",
                 null,10,new PropertyValueGetter<SafeStorage, List>() {
             @Override
@@ -212,21 +194,41 @@ public class SSMSQoLInventoryManagementModPlugin extends BaseModPlugin {
         }, new PropertyValueSetter<SafeStorage, List>() {
             @Override
             public void set(SafeStorage sourceObject, List value) {
-                sourceObject.itemsToStore = value;
+                sourceObject.setItemsToStore(value);
             }
         }, true, String.class) {
             @Override
             public List buildOptions() {
-                List<String> items = new ArrayList<>();
-                for ( UtilItems.ItemId itemId : UtilItems.getInstance().getAllItemIds() ) {
-                    items.add(itemId.uniqueId);
-                }
-                return items;
+                return cp.getItemCatalogue().search(cp.safeStorage != null ? cp.safeStorage.itemFilter : null);
             }
 
             @Override
             public String getOptionLabel(Object o) {
-                return UtilItems.getInstance().getItemIdForUniqueId((String)o).label;
+                return cp.getItemCatalogue().getLabel((String)o);
+            }
+        });
+        confSS.addProperty(new PropertyConfigurationSelectable<SafeStorage,String>("template","Template","A shared template from "+TemplateLibrary.FILE+" in the common folder whose items are stored in addition to the items above.",null,25,String.class,new PropertyValueGetter<SafeStorage, String>() {
+            @Override
+            public String get(SafeStorage sourceObject) {
+                return sourceObject.template;
+            }
+        }, new PropertyValueSetter<SafeStorage, String>() {
+            @Override
+            public void set(SafeStorage sourceObject, String value) {
+                if ( !Objects.equals(sourceObject.template, value) ) sourceObject.templateVersion = 0;
+                sourceObject.template = value;
+                sourceObject.syncTemplateVersion();
+            }
+        }, false) {
+            @Override
+            public List<String> buildOptions() {
+                return TemplateLibrary.getInstance().getNames();
+            }
+
+            @Override
+            public String getOptionLabel(String o) {
+                TemplateLibrary.Template t = TemplateLibrary.getInstance().get(o);
+                return t != null ? o+" (v"+t.version+")" : o;
             }
         });
         confSS.addProperty(new PropertyConfigurationBoolean<>("storeAllRecipes","Store Blueprints","If true then all blueprints will be stored.",true,30, 
@@ -258,18 +260,18 @@ public class SSMSQoLInventoryManagementModPlugin extends BaseModPlugin {
             @Override
             public void set(AutoTrade.ItemTradeRule sourceObject, String value) {
                 sourceObject.itemId = value;
+                //the rule does not know its feature, only the configured one merges rules with a template
+                if ( cp.autoTrade != null ) cp.autoTrade.rulesChanged();
             }
         }, true) {
             @Override
             public List<String> buildOptions() {
-                List<String> names = new ArrayList<>();
-                for ( UtilItems.ItemId o : UtilItems.getInstance().getAllItemIds() ) names.add(o.uniqueId);
-                return names;
+                return cp.getItemCatalogue().search(cp.autoTrade != null ? cp.autoTrade.itemFilter : null);
             }
 
             @Override
             public String getOptionLabel(String o) {
-                return UtilItems.getInstance().getItemIdForUniqueId((String)o).label;
+                return cp.getItemCatalogue().getLabel(o);
             }
         });
         confITR.addProperty(new PropertyConfigurationInteger<>("demand","Demand","How much of an item the fleet should carry.",0,15, new PropertyValueGetter<AutoTrade.ItemTradeRule, Integer>() {
@@ -305,15 +307,32 @@ public class SSMSQoLInventoryManagementModPlugin extends BaseModPlugin {
                 sourceObject.maxBuyPrice = value;
             }
         },false,0f,Float.MAX_VALUE));
+        confITR.addProperty(new PropertyConfigurationString<>("stored","Stored","Where the configured storages hold this item. Storages changed by hand are updated when docking there.","",40,new PropertyValueGetter<AutoTrade.ItemTradeRule, String>() {
+            @Override
+            public String get(AutoTrade.ItemTradeRule sourceObject) {
+                return cp.describeStoredItem(sourceObject.itemId);
+            }
+        }, null, false));
         confITR.configureMinorGameScoped(new PropertyValueGetter<PropertiesContainer<AutoTrade.ItemTradeRule>, String>() {
             @Override
             public String get(PropertiesContainer<AutoTrade.ItemTradeRule> pc) {
-                return new StringBuilder(UtilItems.getInstance().getItemIdForUniqueId(pc.getFieldValue("itemId", String.class)).label).append(", =").append(pc.getFieldValue("demand", Integer.class))
-                        .append(" >").append(pc.getFieldValue("minSellPrice", Float.class)).append(" <").append(pc.getFieldValue("maxBuyPrice", Float.class)).toString();
+                return cp.getItemCatalogue().getRuleLabel(pc.getFieldValue("itemId", String.class), pc.getFieldValue("demand", Integer.class), 
+                        pc.getFieldValue("minSellPrice", Float.class), pc.getFieldValue("maxBuyPrice", Float.class));
             }
         });
         
         PropertiesContainerConfiguration<AutoTrade> confAT = confFactory.getOrCreatePropertiesContainerConfiguration("SSMSQoLInventoryManagementAutoTrade", AutoTrade.class);
+        confAT.addProperty(new PropertyConfigurationString<>("itemFilter","Item Filter","Only offers items whose name has words starting with the given words when picking the item of a rule. Not saved.","",5,new PropertyValueGetter<AutoTrade, String>() {
+            @Override
+            public String get(AutoTrade sourceObject) {
+                return sourceObject.itemFilter;
+            }
+        }, new PropertyValueSetter<AutoTrade, String>() {
+            @Override
+            public void set(AutoTrade sourceObject, String value) {
+                sourceObject.itemFilter = value;
+            }
+        }, false));
         confAT.addProperty(new PropertyConfigurationListContainer<>("rules","Rules","A list of rules that define how items should be traded.",null,10,
             new PropertyValueGetter<AutoTrade, List>() {
                 @Override
@@ -323,7 +342,7 @@ public class SSMSQoLInventoryManagementModPlugin extends BaseModPlugin {
             },new PropertyValueSetter<AutoTrade, List>() {
                 @Override
                 public void set(AutoTrade sourceObject, List value) {
-                    sourceObject.rules = value;
+                    sourceObject.setRules(value);
                 }
             }, true, "SSMSQoLInventoryManagementItemTradeRule", true, true, new Callable<Object>() {
             @Override
@@ -331,6 +350,30 @@ public class SSMSQoLInventoryManagementModPlugin extends BaseModPlugin {
                 return new AutoTrade.ItemTradeRule();
             }
         }));
+        confAT.addProperty(new PropertyConfigurationSelectable<AutoTrade,String>("template","Template","A shared template from "+TemplateLibrary.FILE+" in the common folder whose rules apply to items the rules above do not cover.",null,15,String.class,new PropertyValueGetter<AutoTrade, String>() {
+            @Override
+            public String get(AutoTrade sourceObject) {
+                return sourceObject.template;
+            }
+        }, new PropertyValueSetter<AutoTrade, String>() {
+            @Override
+            public void set(AutoTrade sourceObject, String value) {
+                if ( !Objects.equals(sourceObject.template, value) ) sourceObject.templateVersion = 0;
+                sourceObject.template = value;
+                sourceObject.syncTemplateVersion();
+            }
+        }, false) {
+            @Override
+            public List<String> buildOptions() {
+                return TemplateLibrary.getInstance().getNames();
+            }
+
+            @Override
+            public String getOptionLabel(String o) {
+                TemplateLibrary.Template t = TemplateLibrary.getInstance().get(o);
+                return t != null ? o+" (v"+t.version+")" : o;
+            }
+        });
         confAT.addProperty(new PropertyConfigurationBoolean<>("sellKnownWeapons","Sell known weapons","If true then all known weapons will be sold.",false,20, 
                 new PropertyValueGetter<AutoTrade, Boolean>() {
             @Override
@@ -350,6 +393,55 @@ public class SSMSQoLInventoryManagementModPlugin extends BaseModPlugin {
             }
         });
         
+        PropertiesContainerConfiguration<DockMetrics> confDM = confFactory.getOrCreatePropertiesContainerConfiguration("SSMSQoLInventoryManagementDiagnostics", DockMetrics.class);
+        String[][] timers = new String[][]{
+            {DockMetrics.DOCK, "Dock", "Total time spent while docking at a market."},
+            {DockMetrics.PREPARE, "Prepare Dock", "Time spent planning a dock while approaching a market."},
+            {DockMetrics.REFRESH, "Submarket Refresh", "Time the submarkets take to update their stock."},
+            {DockMetrics.WEAPON_STORAGE, "Weapon Storage", "Time spent exchanging weapons with storage."},
+            {DockMetrics.SAFE_STORAGE, "Safe Storage", "Time spent placing items in safe storage."},
+            {DockMetrics.AUTO_TRADE, "Auto Trade", "Time spent on auto trade."},
+            {DockMetrics.OFFERS, "Offer Collection", "Time spent collecting the offers of the submarkets, including pricing."},
+            {DockMetrics.PRICING, "Pricing", "Time spent pricing items that were not cached."},
+            {DockMetrics.EXECUTION, "Transaction Execution", "Time spent executing the trades."},
+            {DockMetrics.DEFERRED, "Deferred Dock", "Time spent per frame on docks that continued over the following frames."}
+        };
+        int order = 10;
+        for ( final String[] timer : timers ) {
+            confDM.addProperty(new PropertyConfigurationString<>(timer[0],timer[1],timer[2],"",order,new PropertyValueGetter<DockMetrics, String>() {
+                @Override
+                public String get(DockMetrics sourceObject) {
+                    return sourceObject.getTimer(timer[0]).toString();
+                }
+            }, null, false));
+            order += 10;
+        }
+        String[][] counters = new String[][]{
+            {DockMetrics.STACKS_SCANNED, "Stacks Scanned", "Number of cargo stacks that were looked at."},
+            {DockMetrics.OFFERS_BUILT, "Offers Built", "Number of offers auto trade considered buying from."},
+            {DockMetrics.TRANSACTIONS, "Transactions Executed", "Number of market transactions auto trade executed."},
+            {DockMetrics.ITEM_IDS_RESOLVED, "Item Ids Resolved", "Number of distinct items whose ids were resolved, once per dock."},
+            {DockMetrics.STAGES_SKIPPED, "Stages Skipped", "Number of times a feature was skipped since nothing changed since the last dock."},
+            {DockMetrics.STAGES_NOT_APPLICABLE, "Stages Not Applicable", "Number of times a feature was passed over before reading any cargo since it had nothing to do at the market."},
+            {DockMetrics.DEFERRED_FRAMES, "Deferred Frames", "Number of frames in which a dock continued because it did not fit into the frame budget."},
+            {DockMetrics.ALLOCATED_BYTES, "Bytes Allocated", "Memory allocated while docking, only available on JVMs that measure it."}
+        };
+        for ( final String[] counter : counters ) {
+            confDM.addProperty(new PropertyConfigurationString<>(counter[0],counter[1],counter[2],"",order,new PropertyValueGetter<DockMetrics, String>() {
+                @Override
+                public String get(DockMetrics sourceObject) {
+                    return Long.toString(sourceObject.getCounter(counter[0]));
+                }
+            }, null, false));
+            order += 10;
+        }
+        confDM.configureMinorGameScoped(new PropertyValueGetter<PropertiesContainer<DockMetrics>, String>() {
+            @Override
+            public String get(PropertiesContainer<DockMetrics> pc) {
+                return "Diagnostics";
+            }
+        });
+        
         PropertiesContainerConfiguration<CampaignPlugin> confCP = confFactory.getOrCreatePropertiesContainerConfiguration("SSMSQoLInventoryManagement", CampaignPlugin.class);
         confCP.addProperty(new PropertyConfigurationContainer<>("weaponStorage","Weapon Storage","Behaviour for exchanging weapons with a storage on a market.",new WeaponStorage(),"SSMSQoLInventoryManagementWeaponStorage",WeaponStorage.class,10,new PropertyValueGetter<CampaignPlugin, WeaponStorage>() {
                 @Override
@@ -364,6 +456,7 @@ public class SSMSQoLInventoryManagementModPlugin extends BaseModPlugin {
                         ws.entityIds = (List)value.getFieldValue("entityIds", List.class);
                         ws.threshold = (Integer)value.getFieldValue("threshold", Integer.class);
                         ws.keepWeaponsWithoutBlueprint = (Boolean)value.getFieldValue("keepWeaponsWithoutBlueprint", Boolean.class);
+                        ws.sectorWideThreshold = (Boolean)value.getFieldValue("sectorWideThreshold", Boolean.class);
                         sourceObject.weaponStorage = ws;
                     }
                 }
@@ -381,6 +474,10 @@ public class SSMSQoLInventoryManagementModPlugin extends BaseModPlugin {
                         st.entityIds = (List)value.getFieldValue("entityIds", List.class);
                         st.itemsToStore = (List)value.getFieldValue("itemsToStore", List.class);
                         st.storeAllRecipes = (Boolean)value.getFieldValue("storeAllRecipes", Boolean.class);
+                        st.template = (String)value.getFieldValue("template", String.class);
+                        //the template was already applied while it was picked
+                        st.templateVersion = templateVersion(st.template);
+                        st.itemFilter = (String)value.getFieldValue("itemFilter", String.class);
                         sourceObject.safeStorage = st;
                     }
                 }
@@ -397,10 +494,31 @@ public class SSMSQoLInventoryManagementModPlugin extends BaseModPlugin {
                         AutoTrade at = new AutoTrade();
                         at.rules = (List)value.getFieldValue("rules", List.class);
                         at.sellKnownWeapons = (Boolean)value.getFieldValue("sellKnownWeapons", Boolean.class);
+                        at.template = (String)value.getFieldValue("template", String.class);
+                        at.templateVersion = templateVersion(at.template);
+                        at.itemFilter = (String)value.getFieldValue("itemFilter", String.class);
                         sourceObject.autoTrade = at;
                     }
                 }
             }, false));
+        confCP.addProperty(new PropertyConfigurationContainer<>("diagnostics","Diagnostics","Read only timings and counters of the work done while docking during this session.",new DockMetrics(),"SSMSQoLInventoryManagementDiagnostics",DockMetrics.class,35,new PropertyValueGetter<CampaignPlugin, DockMetrics>() {
+                @Override
+                public DockMetrics get(CampaignPlugin sourceObject) {
+                    return sourceObject.getMetrics();
+                }
+            }, null, false));
+        confCP.addProperty(new PropertyConfigurationInteger<>("frameBudget","Frame Budget","Milliseconds of work per frame while docking. Features that do not fit continue over the following frames while the market is open, 0 runs everything when docking.",0,33, 
+                new PropertyValueGetter<CampaignPlugin, Integer>() {
+            @Override
+            public Integer get(CampaignPlugin sourceObject) {
+                return sourceObject.frameBudget;
+            }
+        }, new PropertyValueSetter<CampaignPlugin, Integer>() {
+            @Override
+            public void set(CampaignPlugin sourceObject, Integer value) {
+                sourceObject.frameBudget = value;
+            }
+        }, false, 0, 1000));
         confCP.addProperty(new PropertyConfigurationBoolean<>("uninstall","Uninstall","After activating this you have to save the game. Restart without the mod active and you can load the savegame.",Boolean.FALSE,40,new PropertyValueGetter<CampaignPlugin, Boolean>() {
             @Override
             public Boolean get(CampaignPlugin sourceObject) {
@@ -21,11 +21,17 @@ import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.campaign.CargoAPI;
 import com.fs.starfarer.api.campaign.CargoStackAPI;
 import com.fs.starfarer.api.campaign.SectorEntityToken;
+import com.fs.starfarer.api.campaign.SpecialItemData;
 import com.fs.starfarer.api.campaign.SpecialItemSpecAPI;
-import com.fs.starfarer.api.campaign.econ.MarketAPI;
-import com.fs.starfarer.api.campaign.econ.SubmarketAPI;
+import com.fs.starfarer.campaign.fleet.CargoData;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import org.apache.log4j.Level;
 import ssms.qol.util.UtilItems;
 
 /**
@@ -34,67 +40,229 @@ import ssms.qol.util.UtilItems;
  */
 public class SafeStorage implements Serializable {
     private static final long serialVersionUID = -526977047742778414L;
-    //private final int version = 1;
     
     protected List<String> entityIds;
     protected List<String> itemsToStore;
     protected boolean storeAllRecipes = true;
+    /**
+     * Name of the {@link TemplateLibrary} template whose items are stored in addition to the own items.
+     */
+    protected String template;
+    protected int templateVersion;
+    
+    /**
+     * Narrows the items offered for storage, only kept for the session.
+     */
+    protected transient String itemFilter;
+    protected transient StorageRegistry.StorageIds storageIds;
+    protected transient ItemMatcher matcher;
+    protected transient List<String> mergedItems;
+    protected transient TemplateLibrary.Template mergedTemplate;
+    protected transient List<String> mergedOwnItems;
+    protected transient int mergedOwnItemsSize;
     
     public static boolean qualifiesAsStorage(SectorEntityToken interactionTarget) {
-        return (interactionTarget.getFaction() == null || interactionTarget.getFaction().isPlayerFaction()) &&
-                interactionTarget.getMarket() != null && interactionTarget.getMarket().getSubmarket("storage") != null;
+        return StorageRegistry.qualifiesAsStorage(interactionTarget);
     }
     
-    public boolean isStorage(SectorEntityToken interactionTarget) {
-        return interactionTarget != null && entityIds != null && entityIds.contains(interactionTarget.getId()) && 
-                (interactionTarget.getFaction() == null || interactionTarget.getFaction().isPlayerFaction()) &&
-                interactionTarget.getMarket() != null && interactionTarget.getMarket().getSubmarket("storage") != null;
+    /**
+     * Sets the markets used as safe storage, also needed after the list was edited in place.
+     */
+    public void setEntityIds(List<String> entityIds) {
+        this.entityIds = entityIds;
+        if ( storageIds != null ) storageIds.invalidate();
     }
 
-    public void exchangeItems(SectorEntityToken interactionTarget) {
-        if ( !isStorage(interactionTarget) ) return;
-        UtilItems items = UtilItems.getInstance();
-        CargoAPI fleetCargo = Global.getSector().getPlayerFleet().getCargo();
-        MarketAPI market = interactionTarget.getMarket();
-        SubmarketAPI storage = market.getSubmarket("storage");
-        CargoAPI storageCargo = storage.getCargo();
-        
-        storage.getPlugin().updateCargoPrePlayerInteraction();
-        List<CargoStackAPI> itemsFromFleet = fleetCargo.getStacksCopy();
+    /**
+     * Sets the items to store, also needed after the list was edited in place. The compiled policy and the list 
+     * merged with the template are rebuilt on next use.
+     */
+    public void setItemsToStore(List<String> itemsToStore) {
+        this.itemsToStore = itemsToStore;
+        matcher = null;
+        mergedItems = null;
+    }
+
+    /**
+     * @return The configured markets as a set that stays the same instance until they change, null if none are set.
+     */
+    public Set<String> getStorageIds() {
+        if ( storageIds == null ) storageIds = new StorageRegistry.StorageIds();
+        return storageIds.get(entityIds);
+    }
+
+    public boolean isStorage(SectorEntityToken interactionTarget, StorageRegistry registry) {
+        return registry.isStorage(getStorageIds(), interactionTarget);
+    }
+
+    public int hashConfiguration() {
+        return Objects.hash(entityIds, getItemsToStore(), storeAllRecipes);
+    }
+    
+    /**
+     * @return True if the market is a safe storage and there is anything to store, without reading any cargo.
+     */
+    public boolean isApplicable(DockSnapshot dock, StorageRegistry registry) {
+        return isStorage(dock.interactionTarget, registry) && !getMatcher().isEmpty();
+    }
+    
+    /**
+     * Only plans for docks that pass {@link #isApplicable(DockSnapshot, StorageRegistry)}.
+     * @return The items to move into storage or null if there are none.
+     */
+    public CargoAPI planExchange(DockSnapshot dock, StorageRegistry registry) {
+        ItemMatcher matcher = getMatcher();
+        ItemIdCache items = dock.getItemIds();
+        CargoAPI toStorage = null;
+        List<CargoStackAPI> stacks = dock.getFleetCargo().getStacksCopy();
+        dock.metrics.count(DockMetrics.STACKS_SCANNED, stacks.size());
+        for ( CargoStackAPI item : stacks ) {
+            if ( matcher.matches(item, items) ) {
+                if ( toStorage == null ) toStorage = new CargoData(false);
+                toStorage.addItems(item.getType(), item.getData(), item.getSize());
+            }
+        }
+        return toStorage;
+    }
+    
+    public void applyExchange(CargoAPI toStorage, DockSnapshot dock) {
+        moveToStorage(toStorage, dock);
+        report(Collections.singletonList(toStorage), dock);
+    }
+    
+    /**
+     * @return The items split into cargos of at most the given number of stacks.
+     */
+    public List<CargoAPI> split(CargoAPI toStorage, int partSize) {
+        List<CargoStackAPI> stacks = toStorage.getStacksCopy();
+        List<CargoAPI> parts = new ArrayList<>(stacks.size() / partSize + 1);
+        CargoAPI part = null;
+        int partStacks = 0;
+        for ( CargoStackAPI stack : stacks ) {
+            if ( part == null || partStacks >= partSize ) {
+                part = new CargoData(false);
+                parts.add(part);
+                partStacks = 0;
+            }
+            part.addItems(stack.getType(), stack.getData(), stack.getSize());
+            partStacks++;
+        }
+        return parts;
+    }
+    
+    public void moveToStorage(CargoAPI toStorage, DockSnapshot dock) {
+        dock.getCargo(dock.storage).addAll(toStorage);
+        dock.getFleetCargo().removeAll(toStorage);
+        dock.storageChanged(toStorage, 1f);
+    }
+    
+    /**
+     * Lists the items that were placed in storage, only for live docks.
+     */
+    public void report(List<CargoAPI> stored, DockSnapshot dock) {
+        if ( dock.isCopied() ) return;
         StringBuilder storedItems = new StringBuilder();
-        for ( CargoStackAPI item : itemsFromFleet ) {
-            SpecialItemSpecAPI special = item.getSpecialItemSpecIfSpecial();
-            String itemId = items.getItemId(item).uniqueId;
-            if ( ( itemsToStore != null && itemsToStore.contains(itemId) ) || 
-                    ( storeAllRecipes && special != null && ( special.hasTag("package_bp") || special.hasTag("single_bp") ) ) ) {
-                float amount = item.getSize();
-                storageCargo.addItems(item.getType(), item.getData(), amount);
-                fleetCargo.removeItems(item.getType(), item.getData(), amount);
-                storedItems.append(item.getDisplayName()).append(" x ").append(amount).append("\n");
+        for ( CargoAPI toStorage : stored ) {
+            for ( CargoStackAPI item : toStorage.getStacksCopy() ) {
+                storedItems.append(item.getDisplayName()).append(" x ").append(item.getSize()).append("\n");
             }
         }
-        if ( storedItems.length() > 0 ) {
-            Global.getSector().getCampaignUI().addMessage("Placed items in safe storage:\n"+storedItems.toString());
+        Global.getSector().getCampaignUI().addMessage("Placed items in safe storage:\n"+storedItems.toString());
+    }
+    
+    /**
+     * @return The storage policy compiled from the current configuration. It is recompiled after the configuration 
+     * changed.
+     */
+    protected ItemMatcher getMatcher() {
+        List<String> items = getItemsToStore();
+        if ( matcher == null || !matcher.isCompiledFrom(items, storeAllRecipes) ) {
+            matcher = new ItemMatcher(items, storeAllRecipes);
         }
+        return matcher;
     }
     
-    /*private void writeObject(java.io.ObjectOutputStream out) throws IOException {
-        out.writeInt(version);
-        out.writeObject(entityIds);
-        out.writeObject(itemsToStore);
-        out.writeBoolean(storeAllRecipes);
+    /**
+     * Records the version of the template in use, logging when it differs from the one applied before. Called when 
+     * the game was loaded and when a template was picked.
+     */
+    public void syncTemplateVersion() {
+        TemplateLibrary.Template t = TemplateLibrary.getInstance().get(template);
+        if ( t == null || t.version == templateVersion ) return;
+        Global.getLogger(SSMSQoLInventoryManagementModPlugin.class).log(Level.INFO, 
+                "Applying version "+t.version+" of item template "+t.name+", last applied was "+templateVersion);
+        templateVersion = t.version;
     }
     
-    private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
-        int storedVersion = in.readInt();
-        entityIds = (List<String>) in.readObject();
-        itemsToStore = (List<String>) in.readObject();
-        storeAllRecipes = in.readBoolean();
+    /**
+     * @return The own items followed by the items of the template. The merged list is rebuilt whenever the template or 
+     * the own items were replaced.
+     */
+    public List<String> getItemsToStore() {
+        TemplateLibrary.Template t = TemplateLibrary.getInstance().get(template);
+        if ( t == null ) return itemsToStore;
+        if ( mergedItems == null || mergedTemplate != t || mergedOwnItems != itemsToStore || 
+                mergedOwnItemsSize != (itemsToStore != null ? itemsToStore.size() : 0) ) {
+            List<String> merged = new ArrayList<>(t.itemsToStore.size() + (itemsToStore != null ? itemsToStore.size() : 0));
+            if ( itemsToStore != null ) merged.addAll(itemsToStore);
+            merged.addAll(t.itemsToStore);
+            mergedItems = merged;
+            mergedTemplate = t;
+            mergedOwnItems = itemsToStore;
+            mergedOwnItemsSize = itemsToStore != null ? itemsToStore.size() : 0;
+        }
+        return mergedItems;
     }
     
-    private void readObjectNoData() throws ObjectStreamException {
-        entityIds = null;
-        itemsToStore = null;
-        storeAllRecipes = false;
-    }*/
+    /**
+     * Decides in constant time whether a stack belongs into safe storage.
+     */
+    protected static class ItemMatcher {
+        private static Set<String> blueprintIds;
+        
+        protected final List<String> itemsToStore;
+        protected final int itemsToStoreSize;
+        protected final boolean storeAllRecipes;
+        protected final Set<String> uniqueIds;
+
+        protected ItemMatcher(List<String> itemsToStore, boolean storeAllRecipes) {
+            this.itemsToStore = itemsToStore;
+            this.itemsToStoreSize = itemsToStore != null ? itemsToStore.size() : 0;
+            this.storeAllRecipes = storeAllRecipes;
+            this.uniqueIds = itemsToStore != null ? new HashSet<>(itemsToStore) : new HashSet<String>();
+        }
+        
+        protected boolean isCompiledFrom(List<String> itemsToStore, boolean storeAllRecipes) {
+            return this.itemsToStore == itemsToStore && this.storeAllRecipes == storeAllRecipes && 
+                    itemsToStoreSize == (itemsToStore != null ? itemsToStore.size() : 0);
+        }
+        
+        protected boolean isEmpty() {
+            return !storeAllRecipes && uniqueIds.isEmpty();
+        }
+        
+        protected boolean matches(CargoStackAPI stack, ItemIdCache items) {
+            if ( storeAllRecipes && stack.isSpecialStack() ) {
+                SpecialItemData data = stack.getSpecialDataIfSpecial();
+                if ( data != null && getBlueprintIds().contains(data.getId()) ) return true;
+            }
+            if ( uniqueIds.isEmpty() ) return false;
+            UtilItems.ItemId itemId = items.getItemId(stack);
+            return itemId != null && uniqueIds.contains(itemId.uniqueId);
+        }
+        
+        /**
+         * Special items are defined on application load so the blueprint ids only need to be collected once.
+         */
+        protected static Set<String> getBlueprintIds() {
+            if ( blueprintIds == null ) {
+                Set<String> ids = new HashSet<>();
+                for ( SpecialItemSpecAPI special : Global.getSettings().getAllSpecialItemSpecs() ) {
+                    if ( special.hasTag("package_bp") || special.hasTag("single_bp") ) ids.add(special.getId());
+                }
+                blueprintIds = ids;
+            }
+            return blueprintIds;
+        }
+    }
 }
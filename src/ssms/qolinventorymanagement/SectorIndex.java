@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.campaign.SectorEntityToken;
+import com.fs.starfarer.api.campaign.StarSystemAPI;
+import com.fs.starfarer.api.campaign.econ.MarketAPI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of all entities in the sector that qualify as a storage together with the names of all entities that have a
+ * market. The sector is walked once when the index is first used. Afterwards colony events update single markets and
+ * economy ticks cause the markets in the economy to be checked again the next time the index is read. Names looked up
+ * for entities without a market are only kept until the next economy tick.
+ *
+ * @author Malte Schulze
+ */
+public class SectorIndex {
+    protected final Set<String> storageIds = new LinkedHashSet<>();
+    protected final Map<String,String> names = new HashMap<>();
+    protected final Map<String,String> lookedUp = new HashMap<>();
+    protected boolean built = false;
+    protected boolean economyChanged = false;
+
+    /**
+     * @return Ids of all entities that currently qualify as a storage.
+     */
+    public List<String> getStorageIds() {
+        ensureCurrent();
+        return new ArrayList<>(storageIds);
+    }
+
+    /**
+     * @return The name of the entity or the id itself if the entity does not exist anymore.
+     */
+    public String getLabel(String entityId) {
+        ensureCurrent();
+        String label = names.get(entityId);
+        if ( label == null ) label = lookedUp.get(entityId);
+        if ( label == null ) {
+            SectorEntityToken token = Global.getSector().getEntityById(entityId);
+            label = token != null ? token.getName() : entityId;
+            lookedUp.put(entityId, label);
+        }
+        return label;
+    }
+
+    public void update(MarketAPI market) {
+        if ( !built || market == null ) return;
+        if ( market.getPrimaryEntity() != null ) update(market.getPrimaryEntity());
+        if ( market.getConnectedEntities() != null ) {
+            for ( SectorEntityToken token : market.getConnectedEntities() ) {
+                update(token);
+            }
+        }
+    }
+
+    public void markEconomyChanged() {
+        economyChanged = true;
+    }
+
+    protected void ensureCurrent() {
+        if ( !built ) {
+            for ( StarSystemAPI ss : Global.getSector().getStarSystems() ) {
+                for ( SectorEntityToken token : ss.getAllEntities() ) {
+                    if ( token.getMarket() != null ) update(token);
+                }
+            }
+            built = true;
+            economyChanged = false;
+        } else if ( economyChanged ) {
+            lookedUp.clear();
+            for ( MarketAPI market : Global.getSector().getEconomy().getMarketsCopy() ) {
+                update(market);
+            }
+            economyChanged = false;
+        }
+    }
+
+    protected void update(SectorEntityToken token) {
+        names.put(token.getId(), token.getName());
+        if ( StorageRegistry.qualifiesAsStorage(token) ) storageIds.add(token.getId());
+        else storageIds.remove(token.getId());
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.campaign.CargoAPI;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
+import com.fs.starfarer.api.campaign.SectorEntityToken;
+import com.fs.starfarer.api.campaign.econ.SubmarketAPI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import ssms.qol.util.UtilItems;
+
+/**
+ * Item counts of all configured storages. A storage is indexed from its cargo the first time it is needed, the
+ * exchanges of the mod are added as they happen and a storage is indexed again when it is docked at and its cargo no
+ * longer matches the fingerprint recorded after the last update. Changes the player makes by hand are therefore only
+ * seen on the next dock at that storage.
+ * <p>
+ * Each count is a single cell shared by the per storage and the per item view so both are updated together.
+ *
+ * @author Malte Schulze
+ */
+public class StorageInventory {
+    //entity id -> unique item id -> count
+    protected final Map<String,Map<String,float[]>> storages = new HashMap<>();
+    //unique item id -> entity id -> count
+    protected final Map<String,Map<String,float[]>> locations = new HashMap<>();
+    protected final Map<String,float[]> totals = new HashMap<>();
+    //weapon id -> unique item id, weapon storage only knows weapons by their id
+    protected final Map<String,String> weaponItems = new HashMap<>();
+    protected final Map<String,Integer> fingerprints = new HashMap<>();
+    protected int revision = 0;
+    //the configured storages of the last complete ensureIndexed, dropped whenever a storage leaves the index
+    protected Set<String> ensuredFor;
+
+    public boolean isIndexed(String entityId) {
+        return storages.containsKey(entityId);
+    }
+
+    /**
+     * Indexes the storage anew unless its cargo still matches the fingerprint recorded for it.
+     */
+    public void refresh(String entityId, CargoAPI cargo, int fingerprint, ItemIdCache itemIds) {
+        Integer recorded = fingerprints.get(entityId);
+        if ( recorded != null && recorded == fingerprint ) return;
+        index(entityId, cargo, itemIds);
+        fingerprints.put(entityId, fingerprint);
+    }
+
+    /**
+     * Records the fingerprint of the storage cargo once the changes made to it were added.
+     */
+    public void markCurrent(String entityId, int fingerprint) {
+        if ( isIndexed(entityId) ) fingerprints.put(entityId, fingerprint);
+    }
+
+    /**
+     * Replaces the counts of the storage with the contents of the cargo.
+     */
+    public void index(String entityId, CargoAPI cargo, ItemIdCache itemIds) {
+        clear(entityId);
+        storages.put(entityId, new HashMap<String,float[]>());
+        add(entityId, cargo, 1f, itemIds);
+    }
+
+    /**
+     * Adds the contents of the cargo to the storage, or removes them for a negative sign.
+     */
+    public void add(String entityId, CargoAPI cargo, float sign, ItemIdCache itemIds) {
+        if ( !isIndexed(entityId) ) return;
+        for ( CargoStackAPI stack : cargo.getStacksCopy() ) {
+            UtilItems.ItemId itemId = itemIds.getItemId(stack);
+            if ( itemId == null || itemId.uniqueId == null ) continue;
+            if ( stack.isWeaponStack() ) weaponItems.put((String)stack.getData(), itemId.uniqueId);
+            add(entityId, itemId.uniqueId, sign * stack.getSize());
+        }
+    }
+
+    public void add(String entityId, String uniqueId, float quantity) {
+        Map<String,float[]> storage = storages.get(entityId);
+        if ( storage == null || quantity == 0f ) return;
+        revision++;
+        float[] count = storage.get(uniqueId);
+        if ( count == null ) {
+            count = new float[1];
+            storage.put(uniqueId, count);
+            Map<String,float[]> itemLocations = locations.get(uniqueId);
+            if ( itemLocations == null ) {
+                itemLocations = new HashMap<>();
+                locations.put(uniqueId, itemLocations);
+            }
+            itemLocations.put(entityId, count);
+        }
+        count[0] += quantity;
+        float[] total = totals.get(uniqueId);
+        if ( total == null ) {
+            total = new float[1];
+            totals.put(uniqueId, total);
+        }
+        total[0] += quantity;
+        if ( count[0] <= 0f ) {
+            storage.remove(uniqueId);
+            locations.get(uniqueId).remove(entityId);
+            total[0] -= count[0];
+        }
+    }
+
+    /**
+     * Drops a storage from the index.
+     */
+    public void remove(String entityId) {
+        if ( clear(entityId) ) ensuredFor = null;
+    }
+
+    protected boolean clear(String entityId) {
+        Map<String,float[]> storage = storages.remove(entityId);
+        fingerprints.remove(entityId);
+        if ( storage == null ) return false;
+        revision++;
+        for ( Map.Entry<String,float[]> entry : storage.entrySet() ) {
+            locations.get(entry.getKey()).remove(entityId);
+            totals.get(entry.getKey())[0] -= entry.getValue()[0];
+        }
+        return true;
+    }
+
+    /**
+     * Drops storages that are no longer configured and indexes those that were not indexed yet from their cargo. Does 
+     * nothing if it is handed the same set again and every storage in it was indexed the last time.
+     */
+    public void ensureIndexed(Set<String> configured) {
+        if ( configured == ensuredFor ) return;
+        List<String> stale = new ArrayList<>();
+        for ( String entityId : storages.keySet() ) {
+            if ( !configured.contains(entityId) ) stale.add(entityId);
+        }
+        for ( String entityId : stale ) {
+            remove(entityId);
+        }
+        ItemIdCache itemIds = null;
+        boolean complete = true;
+        for ( String entityId : configured ) {
+            if ( isIndexed(entityId) ) continue;
+            SectorEntityToken token = Global.getSector().getEntityById(entityId);
+            SubmarketAPI storage = token != null && token.getMarket() != null ? token.getMarket().getSubmarket("storage") : null;
+            if ( storage == null ) {
+                //tried again on the next call, the market might gain a storage
+                complete = false;
+                continue;
+            }
+            if ( itemIds == null ) itemIds = new ItemIdCache(null);
+            index(entityId, storage.getCargo(), itemIds);
+            fingerprints.put(entityId, DockSnapshot.fingerprint(storage.getCargo()));
+        }
+        if ( complete ) ensuredFor = configured;
+    }
+
+    /**
+     * @return A number that changes whenever any count changed.
+     */
+    public int getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return The amount of the item in all indexed storages.
+     */
+    public float getTotal(String uniqueId) {
+        float[] total = totals.get(uniqueId);
+        return total != null ? total[0] : 0f;
+    }
+
+    public float getCount(String entityId, String uniqueId) {
+        Map<String,float[]> storage = storages.get(entityId);
+        float[] count = storage != null ? storage.get(uniqueId) : null;
+        return count != null ? count[0] : 0f;
+    }
+
+    public float getWeaponTotal(String weaponId) {
+        String uniqueId = weaponItems.get(weaponId);
+        return uniqueId != null ? getTotal(uniqueId) : 0f;
+    }
+
+    public float getWeaponCount(String entityId, String weaponId) {
+        String uniqueId = weaponItems.get(weaponId);
+        return uniqueId != null ? getCount(entityId, uniqueId) : 0f;
+    }
+
+    /**
+     * @return The storages holding the item mapped to the amount they hold.
+     */
+    public Map<String,Float> getLocations(String uniqueId) {
+        Map<String,float[]> itemLocations = locations.get(uniqueId);
+        if ( itemLocations == null ) return Collections.emptyMap();
+        Map<String,Float> result = new LinkedHashMap<>();
+        for ( Map.Entry<String,float[]> entry : itemLocations.entrySet() ) {
+            result.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return result;
+    }
+}
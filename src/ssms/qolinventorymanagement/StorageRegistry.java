@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.campaign.SectorEntityToken;
+import com.fs.starfarer.api.campaign.econ.MarketAPI;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches whether an entity qualifies as a storage, meaning it is owned by the player or abandoned and its market has a
+ * storage submarket. Entries are dropped by {@link InventoryEventListener} when colonies are founded, abandoned or
+ * decivilized and with every economy tick to catch ownership changes that have no event.
+ *
+ * @author Malte Schulze
+ */
+public class StorageRegistry {
+    protected final Map<String,Boolean> qualified = new HashMap<>();
+
+    /**
+     * The configured entity ids of a storage feature as a set. It is rebuilt when the list was replaced or changed its 
+     * size, and after {@link #invalidate()} which the owner calls when the list was changed in place.
+     */
+    static public class StorageIds {
+        protected Set<String> set;
+        protected List<String> source;
+        protected int sourceSize;
+
+        public Set<String> get(List<String> entityIds) {
+            if ( entityIds == null ) return null;
+            if ( set == null || source != entityIds || sourceSize != entityIds.size() ) {
+                set = new HashSet<>(entityIds);
+                source = entityIds;
+                sourceSize = entityIds.size();
+            }
+            return set;
+        }
+
+        public void invalidate() {
+            set = null;
+        }
+    }
+
+    public static boolean qualifiesAsStorage(SectorEntityToken interactionTarget) {
+        return (interactionTarget.getFaction() == null || interactionTarget.getFaction().isPlayerFaction()) &&
+                interactionTarget.getMarket() != null && interactionTarget.getMarket().getSubmarket("storage") != null;
+    }
+
+    public boolean isQualified(SectorEntityToken interactionTarget) {
+        Boolean result = qualified.get(interactionTarget.getId());
+        if ( result == null ) {
+            result = qualifiesAsStorage(interactionTarget);
+            qualified.put(interactionTarget.getId(), result);
+        }
+        return result;
+    }
+
+    /**
+     * @return True if the entity is one of the given storages and still qualifies as a storage.
+     */
+    public boolean isStorage(Set<String> entityIds, SectorEntityToken interactionTarget) {
+        return interactionTarget != null && entityIds != null && entityIds.contains(interactionTarget.getId()) &&
+                isQualified(interactionTarget);
+    }
+
+    public void invalidate(MarketAPI market) {
+        if ( market == null ) return;
+        if ( market.getPrimaryEntity() != null ) qualified.remove(market.getPrimaryEntity().getId());
+        if ( market.getConnectedEntities() != null ) {
+            for ( SectorEntityToken entity : market.getConnectedEntities() ) {
+                qualified.remove(entity.getId());
+            }
+        }
+    }
+
+    public void invalidate() {
+        qualified.clear();
+    }
+}
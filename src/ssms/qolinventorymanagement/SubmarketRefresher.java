@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.campaign.econ.SubmarketAPI;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Lets submarkets update their stock at most once per economy tick. Refreshing an open market regenerates its stock,
+ * so it only happens when a stage actually reads the cargo of the submarket.
+ *
+ * @author Malte Schulze
+ */
+public class SubmarketRefresher {
+    //submarkets are compared by identity, decivilized markets drop out on their own
+    protected final Map<SubmarketAPI,Integer> refreshedAt = new WeakHashMap<>();
+
+    /**
+     * Refreshes the submarket unless it was already refreshed during the economy tick.
+     * @return True if the submarket was refreshed.
+     */
+    public boolean refresh(SubmarketAPI submarket, int economyTicks, DockMetrics metrics) {
+        Integer tick = refreshedAt.get(submarket);
+        if ( tick != null && tick == economyTicks ) return false;
+        long start = metrics.start();
+        submarket.getPlugin().updateCargoPrePlayerInteraction();
+        metrics.stop(DockMetrics.REFRESH, start);
+        refreshedAt.put(submarket, economyTicks);
+        return true;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.SettingsAPI;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Named rule sets shared by all savegames. They are read from {@value #FILE} in the common folder of the saves
+ * directory and a save only refers to a template by name and keeps its own rules on top of it.
+ * <p>
+ * The file is read line by line, blank lines and lines starting with # are ignored:
+ * <pre>
+ * template &lt;name&gt; &lt;version&gt;
+ * rule &lt;demand&gt; &lt;minSellPrice&gt; &lt;maxBuyPrice&gt; &lt;itemId&gt;
+ * store &lt;itemId&gt;
+ * </pre>
+ * Rule and store lines belong to the template above them. Item ids are the unique ids shown for items and take the
+ * rest of the line.
+ *
+ * @author Malte Schulze
+ */
+public class TemplateLibrary {
+    public static final String FILE = "qolinventorymanagement_templates.txt";
+    protected static TemplateLibrary instance;
+
+    /**
+     * A parsed template. Its lists must not be changed.
+     */
+    static public class Template {
+        public final String name;
+        public final int version;
+        public final List<AutoTrade.ItemTradeRule> rules;
+        public final List<String> itemsToStore;
+
+        public Template(String name, int version, List<AutoTrade.ItemTradeRule> rules, List<String> itemsToStore) {
+            this.name = name;
+            this.version = version;
+            this.rules = Collections.unmodifiableList(rules);
+            this.itemsToStore = Collections.unmodifiableList(itemsToStore);
+        }
+    }
+
+    protected final Map<String,Template> templates = new LinkedHashMap<>();
+
+    /**
+     * The library is loaded on first use and kept for the rest of the session.
+     */
+    public static TemplateLibrary getInstance() {
+        if ( instance == null ) {
+            TemplateLibrary library = new TemplateLibrary();
+            library.load(Global.getSettings());
+            instance = library;
+        }
+        return instance;
+    }
+
+    /**
+     * Drops the loaded templates so the file is read again on next use, which allows editing it between loads.
+     */
+    public static void reload() {
+        instance = null;
+    }
+
+    public Template get(String name) {
+        return name != null ? templates.get(name) : null;
+    }
+
+    public List<String> getNames() {
+        return new ArrayList<>(templates.keySet());
+    }
+
+    /**
+     * The settings API only hands out files of the common folder as a whole string, so the file is held in memory 
+     * once while its lines are parsed.
+     */
+    protected void load(SettingsAPI settings) {
+        Logger logger = Global.getLogger(SSMSQoLInventoryManagementModPlugin.class);
+        if ( !settings.fileExistsInCommon(FILE) ) return;
+        try {
+            parse(new BufferedReader(new StringReader(settings.readTextFileFromCommon(FILE))), logger);
+            logger.log(Level.INFO, "Loaded "+templates.size()+" rule templates.");
+        } catch (IOException ex) {
+            logger.log(Level.ERROR, "Failed to read the rule templates.", ex);
+            templates.clear();
+        }
+    }
+
+    protected void parse(BufferedReader reader, Logger logger) throws IOException {
+        String name = null;
+        int version = 0;
+        List<AutoTrade.ItemTradeRule> rules = null;
+        List<String> itemsToStore = null;
+        int lineNumber = 0;
+        String line;
+        while ( (line = reader.readLine()) != null ) {
+            lineNumber++;
+            line = line.trim();
+            if ( line.isEmpty() || line.startsWith("#") ) continue;
+            String[] parts = line.split("\\s+", 5);
+            try {
+                switch ( parts[0] ) {
+                    case "template":
+                        if ( name != null ) templates.put(name, new Template(name, version, rules, itemsToStore));
+                        name = null;
+                        if ( parts.length != 3 ) throw new IllegalArgumentException("expected a name and a version");
+                        version = Integer.parseInt(parts[2]);
+                        name = parts[1];
+                        rules = new ArrayList<>();
+                        itemsToStore = new ArrayList<>();
+                        break;
+                    case "rule":
+                        if ( name == null ) throw new IllegalArgumentException("rule outside of a template");
+                        if ( parts.length != 5 ) throw new IllegalArgumentException("expected demand, prices and an item");
+                        AutoTrade.ItemTradeRule rule = new AutoTrade.ItemTradeRule();
+                        rule.demand = Integer.parseInt(parts[1]);
+                        rule.minSellPrice = Float.parseFloat(parts[2]);
+                        rule.maxBuyPrice = Float.parseFloat(parts[3]);
+                        rule.itemId = parts[4];
+                        rules.add(rule);
+                        break;
+                    case "store":
+                        if ( name == null ) throw new IllegalArgumentException("item outside of a template");
+                        if ( parts.length < 2 ) throw new IllegalArgumentException("expected an item");
+                        itemsToStore.add(line.substring(parts[0].length()).trim());
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown entry "+parts[0]);
+                }
+            } catch (IllegalArgumentException ex) {
+                logger.log(Level.WARN, "Skipped line "+lineNumber+" of "+FILE+": "+ex.getMessage());
+            }
+        }
+        if ( name != null ) templates.put(name, new Template(name, version, rules, itemsToStore));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.campaign.CampaignFleetAPI;
+import com.fs.starfarer.api.campaign.CampaignUIAPI.CoreUITradeMode;
+import com.fs.starfarer.api.campaign.FactionAPI;
+import com.fs.starfarer.api.campaign.LocationAPI;
+import com.fs.starfarer.api.campaign.SectorEntityToken;
+import com.fs.starfarer.api.campaign.econ.MarketAPI;
+import com.fs.starfarer.api.impl.campaign.rulecmd.IsSoughtByPatrols;
+import com.fs.starfarer.api.util.Misc;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides how the player may trade at a market. Hostility and the transponder flag are cached per faction until the
+ * reputation with the faction changes. Whether patrols seek the player depends on the fleets around so that answer is
+ * only kept for a short time and is dropped when the player changes location or toggles the transponder.
+ *
+ * @author Malte Schulze
+ */
+public class TradeModeResolver {
+    /**
+     * Days for which a sought by patrols check stays valid.
+     */
+    public static final float SOUGHT_TTL_DAYS = 0.1f;
+    
+    protected static class FactionEntry {
+        protected final boolean hostile;
+        protected final boolean transponderOffTrade;
+        protected Boolean sought;
+        protected long soughtTimestamp;
+
+        protected FactionEntry(boolean hostile, boolean transponderOffTrade) {
+            this.hostile = hostile;
+            this.transponderOffTrade = transponderOffTrade;
+        }
+    }
+    
+    protected final Map<String,FactionEntry> factions = new HashMap<>();
+    protected LocationAPI soughtLocation;
+    protected boolean transponderOn;
+
+    public CoreUITradeMode resolve(SectorEntityToken interactionTarget) {
+        MarketAPI market = interactionTarget.getMarket();
+        if ( market == null ) return CoreUITradeMode.NONE;
+        if ( market.isPlayerOwned() ) return CoreUITradeMode.OPEN;
+        FactionAPI faction = interactionTarget.getFaction();
+        if ( faction == null ) return CoreUITradeMode.NONE;
+        FactionEntry entry = getEntry(faction);
+        if ( entry.hostile ) return CoreUITradeMode.NONE;
+        
+        CampaignFleetAPI fleet = Global.getSector().getPlayerFleet();
+        boolean on = fleet.isTransponderOn();
+        if ( on != transponderOn || fleet.getContainingLocation() != soughtLocation ) {
+            clearSought();
+            transponderOn = on;
+            soughtLocation = fleet.getContainingLocation();
+        }
+        if ( on || market.isFreePort() || entry.transponderOffTrade ) return CoreUITradeMode.OPEN;
+        return isSoughtByPatrols(faction, entry) ? CoreUITradeMode.NONE : CoreUITradeMode.SNEAK;
+    }
+    
+    protected FactionEntry getEntry(FactionAPI faction) {
+        FactionEntry entry = factions.get(faction.getId());
+        if ( entry == null ) {
+            entry = new FactionEntry(faction.isHostileTo(Global.getSector().getPlayerFaction()), 
+                    faction.getCustomBoolean("allowsTransponderOffTrade"));
+            factions.put(faction.getId(), entry);
+        }
+        return entry;
+    }
+    
+    protected boolean isSoughtByPatrols(FactionAPI faction, FactionEntry entry) {
+        if ( entry.sought == null || Global.getSector().getClock().getElapsedDaysSince(entry.soughtTimestamp) > SOUGHT_TTL_DAYS ) {
+            IsSoughtByPatrols rule = new IsSoughtByPatrols();
+            List<Misc.Token> params = new ArrayList<>();
+            params.add(new Misc.Token(faction.getId(), Misc.TokenType.LITERAL));
+            entry.sought = rule.execute(null, null, params, null);
+            entry.soughtTimestamp = Global.getSector().getClock().getTimestamp();
+        }
+        return entry.sought;
+    }
+    
+    protected void clearSought() {
+        for ( FactionEntry entry : factions.values() ) {
+            entry.sought = null;
+        }
+    }
+    
+    public void invalidate(String factionId) {
+        factions.remove(factionId);
+    }
+    
+    public void invalidate() {
+        factions.clear();
+    }
+}
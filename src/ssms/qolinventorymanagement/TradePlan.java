@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Orders decided by the {@link TradePlanner}. The plan does not touch any cargo, {@link AutoTrade#execute} applies it.
+ *
+ * @author Malte Schulze
+ */
+public class TradePlan {
+    public enum OrderType {
+        /**
+         * Known weapons sold before the rules are applied.
+         */
+        WEAPON_SALE,
+        SALE,
+        PURCHASE,
+        /**
+         * Free items moved directly into the fleet.
+         */
+        TRANSFER
+    }
+    
+    static public class Order {
+        public final OrderType type;
+        public final String uniqueId;
+        public final int venue;
+        public final float quantity;
+        /**
+         * Handle of the item or offer the order was made for.
+         */
+        public final Object handle;
+
+        public Order(OrderType type, String uniqueId, int venue, float quantity, Object handle) {
+            this.type = type;
+            this.uniqueId = uniqueId;
+            this.venue = venue;
+            this.quantity = quantity;
+            this.handle = handle;
+        }
+    }
+    
+    protected final List<Order> orders = new ArrayList<>();
+    /**
+     * Credit value of the transactions once the plan was executed, negative if credits were spent.
+     */
+    protected float credits;
+
+    public void add(Order order) {
+        orders.add(order);
+    }
+
+    public List<Order> getOrders() {
+        return Collections.unmodifiableList(orders);
+    }
+
+    public boolean isEmpty() {
+        return orders.isEmpty();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import java.util.Arrays;
+
+/**
+ * Decides what auto trade buys and sells. The planner only reads the {@link TradeSnapshot} it is given and has no 
+ * side effects, the same snapshot always results in the same plan. Working arrays are kept between plans so a 
+ * planner should be reused but not shared between threads.
+ *
+ * @author Malte Schulze
+ */
+public class TradePlanner {
+    private static final int[] SALE_VENUES = new int[]{TradeSnapshot.PRIMARY, TradeSnapshot.SECONDARY, TradeSnapshot.STORAGE};
+    private static final int[] WEAPON_SALE_VENUES = new int[]{TradeSnapshot.PRIMARY, TradeSnapshot.SECONDARY};
+    
+    protected final OrderBook goods = new OrderBook();
+    //per item index, only valid for fleet and rule items
+    protected float[] quantities = new float[64];
+    protected int[] firstRule = new int[64];
+    
+    public TradePlan plan(TradeSnapshot snapshot) {
+        TradePlan plan = new TradePlan();
+        int itemCount = snapshot.getItemCount();
+        if ( quantities.length < itemCount ) {
+            int size = Math.max(itemCount, quantities.length * 2);
+            quantities = Arrays.copyOf(quantities, size);
+            firstRule = Arrays.copyOf(firstRule, size);
+        }
+        for ( int i = 0; i < snapshot.getFleetItemCount(); i++ ) {
+            int item = snapshot.getFleetItem(i);
+            quantities[item] = snapshot.getFleetQuantity(item);
+            firstRule[item] = -1;
+        }
+        for ( int rule = 0; rule < snapshot.getRuleCount(); rule++ ) {
+            int item = snapshot.getRuleItem(rule);
+            quantities[item] = snapshot.getFleetQuantity(item);
+            firstRule[item] = -1;
+        }
+        //if several rules exist for the same item the first one limits the weapon sale
+        for ( int rule = 0; rule < snapshot.getRuleCount(); rule++ ) {
+            int item = snapshot.getRuleItem(rule);
+            if ( firstRule[item] < 0 ) firstRule[item] = rule;
+        }
+        
+        if ( snapshot.isSellKnownWeapons() ) {
+            for ( int i = 0; i < snapshot.getFleetItemCount(); i++ ) {
+                int item = snapshot.getFleetItem(i);
+                if ( !snapshot.isKnownWeapon(item) ) continue;
+                int countToSell = (int)quantities[item];
+                //do not sell weapons below their demand
+                if ( firstRule[item] >= 0 ) countToSell = Math.max(countToSell-snapshot.getRuleDemand(firstRule[item]), 0);
+                int venue = firstVenue(snapshot, item, WEAPON_SALE_VENUES);
+                if ( countToSell <= 0 || venue < 0 ) continue;
+                plan.add(new TradePlan.Order(TradePlan.OrderType.WEAPON_SALE, snapshot.getItemId(item), venue, countToSell, snapshot.getItemHandle(item)));
+                quantities[item] -= countToSell;
+            }
+        }
+        
+        if ( snapshot.getRuleCount() == 0 ) return plan;
+        //only items that are short in the fleet are worth an offer
+        goods.reset(snapshot);
+        for ( int rule = 0; rule < snapshot.getRuleCount(); rule++ ) {
+            int item = snapshot.getRuleItem(rule);
+            if ( snapshot.getRuleDemand(rule) > quantities[item] ) goods.demand(item, snapshot.getRuleMaxBuyPrice(rule));
+        }
+        if ( !goods.isEmpty() ) goods.build();
+        
+        for ( int rule = 0; rule < snapshot.getRuleCount(); rule++ ) {
+            int item = snapshot.getRuleItem(rule);
+            int demand = snapshot.getRuleDemand(rule);
+            float quantity = quantities[item];
+            if ( demand > quantity ) {
+                float maxBuyPrice = snapshot.getRuleMaxBuyPrice(rule);
+                float outstandingDemand = demand - quantity;
+                int offer;
+                while ( outstandingDemand > 0f && (offer = goods.cheapest(item)) >= 0 ) {
+                    float price = snapshot.getOfferPrice(offer);
+                    if ( price > maxBuyPrice ) break;
+                    float quantityToBuy = Math.min(outstandingDemand, goods.getRemaining(offer));
+                    TradePlan.OrderType type = price == 0 ? TradePlan.OrderType.TRANSFER : TradePlan.OrderType.PURCHASE;
+                    plan.add(new TradePlan.Order(type, snapshot.getItemId(item), snapshot.getOfferVenue(offer), quantityToBuy, snapshot.getOfferHandle(offer)));
+                    goods.consume(offer, quantityToBuy);
+                    outstandingDemand -= quantityToBuy;
+                }
+                quantities[item] = demand - Math.max(outstandingDemand, 0f);
+            } else if ( demand < quantity ) {
+                int venue = firstVenue(snapshot, item, SALE_VENUES);
+                if ( venue >= 0 ) {
+                    plan.add(new TradePlan.Order(TradePlan.OrderType.SALE, snapshot.getItemId(item), venue, quantity-demand, snapshot.getItemHandle(item)));
+                    quantities[item] = demand;
+                }
+            }
+        }
+        return plan;
+    }
+    
+    private int firstVenue(TradeSnapshot snapshot, int item, int[] venues) {
+        for ( int venue : venues ) {
+            if ( snapshot.isSellableAt(item, venue) ) return venue;
+        }
+        return -1;
+    }
+}
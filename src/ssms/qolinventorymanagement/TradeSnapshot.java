@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Input for the {@link TradePlanner}. It only consists of plain values so plans can be computed and measured without
+ * the game running. The game objects an item or offer was made from are carried along as opaque handles for the
+ * executor.
+ * <p>
+ * Items, offers and rules are stored as parallel arrays that are kept between docks. Item ids are mapped to indices
+ * once and the mapping is kept as well so a dock that does not grow the arrays allocates nothing. The snapshot must
+ * not be changed while a plan is computed from it and is only valid until the next {@link #reset(boolean)}.
+ *
+ * @author Malte Schulze
+ */
+public class TradeSnapshot {
+    /**
+     * Submarkets are referred to by these indices. Which submarkets are used as primary and secondary depends on the
+     * trade mode the snapshot was taken with.
+     */
+    public static final int STOCKPILE = 0, STORAGE = 1, PRIMARY = 2, SECONDARY = 3, VENUES = 4;
+
+    protected final Map<String,Integer> itemIndices = new HashMap<>();
+    protected String[] itemIds = new String[64];
+    protected int itemCount = 0;
+
+    //per item index, only valid for items listed in fleetItems
+    protected float[] fleetQuantity = new float[64];
+    protected boolean[] knownWeapon = new boolean[64];
+    protected int[] sellableAt = new int[64];
+    protected Object[] itemHandle = new Object[64];
+    protected boolean[] inFleet = new boolean[64];
+    //per item index, true for items a rule exists for
+    protected boolean[] ruled = new boolean[64];
+    //per item index, true for items a rule asks more of than the fleet carries
+    protected boolean[] shortage = new boolean[64];
+    protected int[] fleetItems = new int[64];
+    protected int fleetItemCount = 0;
+
+    protected int[] offerItem = new int[256];
+    protected float[] offerQuantity = new float[256];
+    protected float[] offerPrice = new float[256];
+    protected byte[] offerVenue = new byte[256];
+    protected Object[] offerHandle = new Object[256];
+    protected int offerCount = 0;
+
+    protected int[] ruleItem = new int[16];
+    protected int[] ruleDemand = new int[16];
+    protected float[] ruleMaxBuyPrice = new float[16];
+    protected int ruleCount = 0;
+
+    protected boolean sellKnownWeapons;
+
+    public TradeSnapshot() {
+    }
+
+    /**
+     * Empties the snapshot for the next dock. Handles are released so the game objects can be collected.
+     */
+    public void reset(boolean sellKnownWeapons) {
+        this.sellKnownWeapons = sellKnownWeapons;
+        for ( int i = 0; i < fleetItemCount; i++ ) {
+            int item = fleetItems[i];
+            inFleet[item] = false;
+            itemHandle[item] = null;
+        }
+        fleetItemCount = 0;
+        for ( int i = 0; i < ruleCount; i++ ) {
+            ruled[ruleItem[i]] = false;
+            shortage[ruleItem[i]] = false;
+        }
+        ruleCount = 0;
+        Arrays.fill(offerHandle, 0, offerCount, null);
+        offerCount = 0;
+    }
+
+    /**
+     * @return The index of the item, items seen for the first time are assigned the next free index.
+     */
+    public int item(String uniqueId) {
+        Integer index = itemIndices.get(uniqueId);
+        if ( index == null ) {
+            if ( itemCount == itemIds.length ) growItems();
+            index = itemCount++;
+            itemIds[index] = uniqueId;
+            itemIndices.put(uniqueId, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return The index of the item or -1 if the item was never seen.
+     */
+    public int findItem(String uniqueId) {
+        Integer index = itemIndices.get(uniqueId);
+        return index != null ? index : -1;
+    }
+
+    public void addRule(String itemId, int demand, float maxBuyPrice) {
+        if ( ruleCount == ruleItem.length ) {
+            int size = ruleCount * 2;
+            ruleItem = Arrays.copyOf(ruleItem, size);
+            ruleDemand = Arrays.copyOf(ruleDemand, size);
+            ruleMaxBuyPrice = Arrays.copyOf(ruleMaxBuyPrice, size);
+        }
+        int item = item(itemId);
+        ruleItem[ruleCount] = item;
+        ruleDemand[ruleCount] = demand;
+        ruleMaxBuyPrice[ruleCount] = maxBuyPrice;
+        ruled[item] = true;
+        ruleCount++;
+    }
+
+    /**
+     * Adds fleet cargo of an item. The first call for an item defines its flags and handle, later calls only add to
+     * the quantity.
+     */
+    public void addFleetItem(int item, float quantity, boolean knownWeapon, int sellableAt, Object handle) {
+        if ( !inFleet[item] ) {
+            if ( fleetItemCount == fleetItems.length ) fleetItems = Arrays.copyOf(fleetItems, fleetItemCount * 2);
+            fleetItems[fleetItemCount++] = item;
+            inFleet[item] = true;
+            fleetQuantity[item] = 0f;
+            this.knownWeapon[item] = knownWeapon;
+            this.sellableAt[item] = sellableAt;
+            itemHandle[item] = handle;
+        }
+        fleetQuantity[item] += quantity;
+    }
+
+    public void addOffer(int item, int venue, float quantity, float price, Object handle) {
+        if ( offerCount == offerItem.length ) {
+            int size = offerCount * 2;
+            offerItem = Arrays.copyOf(offerItem, size);
+            offerQuantity = Arrays.copyOf(offerQuantity, size);
+            offerPrice = Arrays.copyOf(offerPrice, size);
+            offerVenue = Arrays.copyOf(offerVenue, size);
+            offerHandle = Arrays.copyOf(offerHandle, size);
+        }
+        offerItem[offerCount] = item;
+        offerQuantity[offerCount] = quantity;
+        offerPrice[offerCount] = price;
+        offerVenue[offerCount] = (byte)venue;
+        offerHandle[offerCount] = handle;
+        offerCount++;
+    }
+
+    protected void growItems() {
+        int size = itemIds.length * 2;
+        itemIds = Arrays.copyOf(itemIds, size);
+        fleetQuantity = Arrays.copyOf(fleetQuantity, size);
+        knownWeapon = Arrays.copyOf(knownWeapon, size);
+        sellableAt = Arrays.copyOf(sellableAt, size);
+        itemHandle = Arrays.copyOf(itemHandle, size);
+        inFleet = Arrays.copyOf(inFleet, size);
+        ruled = Arrays.copyOf(ruled, size);
+        shortage = Arrays.copyOf(shortage, size);
+    }
+
+    /**
+     * Marks the items any rule asks more of than the fleet carries. Must be called once all rules and fleet items
+     * were added.
+     */
+    public void markShortages() {
+        for ( int rule = 0; rule < ruleCount; rule++ ) {
+            if ( ruleDemand[rule] > getFleetQuantity(ruleItem[rule]) ) shortage[ruleItem[rule]] = true;
+        }
+    }
+
+    public boolean isShort(int item) {
+        return item >= 0 && shortage[item];
+    }
+
+    public boolean hasRule(int item) {
+        return item >= 0 && ruled[item];
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public String getItemId(int item) {
+        return itemIds[item];
+    }
+
+    public int getFleetItemCount() {
+        return fleetItemCount;
+    }
+
+    public int getFleetItem(int i) {
+        return fleetItems[i];
+    }
+
+    public boolean isInFleet(int item) {
+        return item >= 0 && inFleet[item];
+    }
+
+    public float getFleetQuantity(int item) {
+        return inFleet[item] ? fleetQuantity[item] : 0f;
+    }
+
+    public boolean isKnownWeapon(int item) {
+        return inFleet[item] && knownWeapon[item];
+    }
+
+    public boolean isSellableAt(int item, int venue) {
+        return inFleet[item] && (sellableAt[item] & (1 << venue)) != 0;
+    }
+
+    public Object getItemHandle(int item) {
+        return inFleet[item] ? itemHandle[item] : null;
+    }
+
+    public int getOfferCount() {
+        return offerCount;
+    }
+
+    public int getOfferItem(int offer) {
+        return offerItem[offer];
+    }
+
+    public float getOfferQuantity(int offer) {
+        return offerQuantity[offer];
+    }
+
+    public float getOfferPrice(int offer) {
+        return offerPrice[offer];
+    }
+
+    public int getOfferVenue(int offer) {
+        return offerVenue[offer];
+    }
+
+    public Object getOfferHandle(int offer) {
+        return offerHandle[offer];
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    public int getRuleItem(int rule) {
+        return ruleItem[rule];
+    }
+
+    public int getRuleDemand(int rule) {
+        return ruleDemand[rule];
+    }
+
+    public float getRuleMaxBuyPrice(int rule) {
+        return ruleMaxBuyPrice[rule];
+    }
+
+    public boolean isSellKnownWeapons() {
+        return sellKnownWeapons;
+    }
+}
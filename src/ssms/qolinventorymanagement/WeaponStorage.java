@@ -17,16 +17,16 @@
  */
 package ssms.qolinventorymanagement;
 
-import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.campaign.CargoAPI;
-import com.fs.starfarer.api.campaign.FactionAPI;
 import com.fs.starfarer.api.campaign.SectorEntityToken;
-import com.fs.starfarer.api.campaign.econ.MarketAPI;
-import com.fs.starfarer.api.campaign.econ.SubmarketAPI;
+import com.fs.starfarer.campaign.fleet.CargoData;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import org.apache.log4j.Level;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  *
@@ -34,65 +34,139 @@ import org.apache.log4j.Level;
  */
 public class WeaponStorage implements Serializable {
     private static final long serialVersionUID = 3557997470155908244L;
-    //private final int version = 1;
     
     protected List<String> entityIds;
     protected int threshold = 1000;
     protected boolean keepWeaponsWithoutBlueprint = true;
+    /**
+     * If true the threshold applies to the sum over all configured storages instead of each storage on its own.
+     */
+    protected boolean sectorWideThreshold = false;
+    
+    protected transient StorageRegistry.StorageIds storageIds;
     
     public static boolean qualifiesAsStorage(SectorEntityToken interactionTarget) {
-        return (interactionTarget.getFaction() == null || interactionTarget.getFaction().isPlayerFaction()) &&
-                interactionTarget.getMarket() != null && interactionTarget.getMarket().getSubmarket("storage") != null;
+        return StorageRegistry.qualifiesAsStorage(interactionTarget);
     }
 
-    public boolean isStorage(SectorEntityToken interactionTarget) {
-        return interactionTarget != null && entityIds != null && entityIds.contains(interactionTarget.getId()) && 
-                qualifiesAsStorage(interactionTarget);
+    /**
+     * Replaces the configured storages. Must also be called after the list was changed in place.
+     */
+    public void setEntityIds(List<String> entityIds) {
+        this.entityIds = entityIds;
+        if ( storageIds != null ) storageIds.invalidate();
     }
 
-    public void exchangeWeapons(SectorEntityToken interactionTarget) {
-        if ( !isStorage(interactionTarget) ) return;
-        CargoAPI fleetCargo = Global.getSector().getPlayerFleet().getCargo();
-        MarketAPI market = interactionTarget.getMarket();
-        SubmarketAPI storage = market.getSubmarket("storage");
-        CargoAPI storageCargo = storage.getCargo();
-        
-        storage.getPlugin().updateCargoPrePlayerInteraction();
-        List<CargoAPI.CargoItemQuantity<String>> weapons = new ArrayList<>(fleetCargo.getWeapons());
-        for ( CargoAPI.CargoItemQuantity<String> weapon : weapons ) {
-            if ( weapon.getCount() > 0 ) {
-                storageCargo.addWeapons(weapon.getItem(), weapon.getCount());
-                fleetCargo.removeWeapons(weapon.getItem(), weapon.getCount());
+    /**
+     * @return The configured markets as a set that stays the same instance until they change, null if none are set.
+     */
+    public Set<String> getStorageIds() {
+        if ( storageIds == null ) storageIds = new StorageRegistry.StorageIds();
+        return storageIds.get(entityIds);
+    }
+
+    public boolean isStorage(SectorEntityToken interactionTarget, StorageRegistry registry) {
+        return registry.isStorage(getStorageIds(), interactionTarget);
+    }
+
+    public int hashConfiguration() {
+        return Objects.hash(entityIds, threshold, keepWeaponsWithoutBlueprint, sectorWideThreshold);
+    }
+    
+    /**
+     * Only plans for markets that pass {@link #isStorage(SectorEntityToken, StorageRegistry)}.
+     * @return The weapons to move.
+     */
+    public Map<String,Integer> planExchange(DockSnapshot dock, StorageRegistry registry) {
+        List<CargoAPI.CargoItemQuantity<String>> fleetWeapons = dock.getFleetCargo().getWeapons();
+        List<CargoAPI.CargoItemQuantity<String>> storageWeapons = dock.getCargo(dock.storage).getWeapons();
+        dock.metrics.count(DockMetrics.STACKS_SCANNED, fleetWeapons.size() + storageWeapons.size());
+        return computeDelta(fleetWeapons, storageWeapons, sectorWideThreshold ? dock.getInventory() : null, dock.interactionTarget.getId(),
+                dock.getKnownWeapons());
+    }
+    
+    /**
+     * @return The delta split into parts of at most the given number of weapons.
+     */
+    public List<Map<String,Integer>> split(Map<String,Integer> delta, int partSize) {
+        List<Map<String,Integer>> parts = new ArrayList<>(delta.size() / partSize + 1);
+        Map<String,Integer> part = null;
+        for ( Map.Entry<String,Integer> entry : delta.entrySet() ) {
+            if ( part == null || part.size() >= partSize ) {
+                part = new HashMap<>();
+                parts.add(part);
             }
+            part.put(entry.getKey(), entry.getValue());
         }
-        weapons = new ArrayList<>(storageCargo.getWeapons());
-        FactionAPI playerFaction = Global.getSector().getPlayerFaction();
-        for ( CargoAPI.CargoItemQuantity<String> weapon : weapons ) {
-            if ( weapon.getCount() > threshold && (!keepWeaponsWithoutBlueprint || playerFaction.knowsWeapon(weapon.getItem())) ) {
-                int transfer = weapon.getCount() - threshold;
-                fleetCargo.addWeapons(weapon.getItem(), transfer);
-                storageCargo.removeWeapons(weapon.getItem(), transfer);
-            }
+        return parts;
+    }
+    
+    public void applyExchange(Map<String,Integer> delta, DockSnapshot dock) {
+        if ( delta.isEmpty() ) return;
+        CargoAPI fleetCargo = dock.getFleetCargo();
+        CargoAPI storageCargo = dock.getCargo(dock.storage);
+        CargoAPI toStorage = new CargoData(false), toFleet = new CargoData(false);
+        for ( Map.Entry<String,Integer> entry : delta.entrySet() ) {
+            int count = entry.getValue();
+            if ( count > 0 ) toStorage.addWeapons(entry.getKey(), count);
+            else toFleet.addWeapons(entry.getKey(), -count);
+        }
+        storageCargo.addAll(toStorage);
+        fleetCargo.removeAll(toStorage);
+        fleetCargo.addAll(toFleet);
+        storageCargo.removeAll(toFleet);
+        dock.storageChanged(toStorage, 1f);
+        dock.storageChanged(toFleet, -1f);
+    }
+    
+    /**
+     * Computes how many weapons of each type have to move so that the storage holds everything except the excess
+     * over the threshold, which belongs into the fleet.
+     * @param inventory If given the weapons held by the other storages count towards the threshold.
+     * @return Weapon ids mapped to the count that moves into storage. Negative counts move into the fleet. 
+     * Weapons that stay where they are have no entry.
+     */
+    protected Map<String,Integer> computeDelta(List<CargoAPI.CargoItemQuantity<String>> fleetWeapons, List<CargoAPI.CargoItemQuantity<String>> storageWeapons, 
+            StorageInventory inventory, String entityId, KnownWeapons knownWeapons) {
+        Map<String,Integer> fleetCounts = count(fleetWeapons);
+        Map<String,Integer> storageCounts = count(storageWeapons);
+        
+        Map<String,Integer> delta = new HashMap<>();
+        for ( Map.Entry<String,Integer> entry : fleetCounts.entrySet() ) {
+            Integer stored = storageCounts.remove(entry.getKey());
+            addDelta(delta, entry.getKey(), entry.getValue(), stored != null ? stored : 0, elsewhere(inventory, entityId, entry.getKey()), knownWeapons);
+        }
+        //weapons that are only in storage
+        for ( Map.Entry<String,Integer> entry : storageCounts.entrySet() ) {
+            addDelta(delta, entry.getKey(), 0, entry.getValue(), elsewhere(inventory, entityId, entry.getKey()), knownWeapons);
         }
+        return delta;
     }
     
-    /*private void writeObject(java.io.ObjectOutputStream out) throws IOException {
-        out.writeInt(version);
-        out.writeObject(entityIds);
-        out.writeInt(threshold);
-        out.writeBoolean(keepWeaponsWithoutBlueprint);
+    /**
+     * Sums the counts per weapon id, a weapon may be listed once per stack.
+     */
+    private Map<String,Integer> count(List<CargoAPI.CargoItemQuantity<String>> weapons) {
+        Map<String,Integer> counts = new HashMap<>();
+        for ( CargoAPI.CargoItemQuantity<String> weapon : weapons ) {
+            if ( weapon.getCount() <= 0 ) continue;
+            Integer count = counts.get(weapon.getItem());
+            counts.put(weapon.getItem(), count != null ? count + weapon.getCount() : weapon.getCount());
+        }
+        return counts;
     }
     
-    private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
-        int storedVersion = in.readInt();
-        entityIds = (List<String>) in.readObject();
-        threshold = in.readInt();
-        keepWeaponsWithoutBlueprint = in.readBoolean();
+    private int elsewhere(StorageInventory inventory, String entityId, String weaponId) {
+        if ( inventory == null ) return 0;
+        return Math.max(0, Math.round(inventory.getWeaponTotal(weaponId) - inventory.getWeaponCount(entityId, weaponId)));
     }
     
-    private void readObjectNoData() throws ObjectStreamException {
-        entityIds = null;
-        threshold = 1000;
-        keepWeaponsWithoutBlueprint = false;
-    }*/
+    private void addDelta(Map<String,Integer> delta, String weaponId, int inFleet, int inStorage, int elsewhere, KnownWeapons knownWeapons) {
+        int total = inFleet + inStorage;
+        int target = total;
+        if ( total + elsewhere > threshold && (!keepWeaponsWithoutBlueprint || knownWeapons.knows(weaponId)) ) {
+            target = Math.max(0, threshold - elsewhere);
+        }
+        if ( target != inStorage ) delta.put(weaponId, target - inStorage);
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import static org.junit.Assert.assertEquals;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Own rules merged with the rules of a template.
+ *
+ * @author Malte Schulze
+ */
+public class AutoTradeRulesTest {
+    protected AutoTrade autoTrade;
+    
+    @Before
+    public void setup() {
+        Fakes.installSettings(Collections.<String>emptyList(), "single_bp");
+        TemplateLibrary.instance = new TemplateLibrary();
+        TemplateLibrary.instance.templates.put("basics", new TemplateLibrary.Template("basics", 1, 
+                Arrays.asList(rule("fuel", 100), rule("supplies", 200)), new ArrayList<String>()));
+        autoTrade = new AutoTrade();
+        autoTrade.template = "basics";
+    }
+    
+    @After
+    public void teardown() {
+        TemplateLibrary.reload();
+    }
+    
+    @Test
+    public void ownRulesReplaceTemplateRules() {
+        autoTrade.setRules(new ArrayList<>(Collections.singletonList(rule("fuel", 10))));
+        assertRules(autoTrade.getRules(), "fuel", 10, "supplies", 200);
+    }
+    
+    @Test
+    public void followsRuleItemEditedInPlace() {
+        List<AutoTrade.ItemTradeRule> rules = new ArrayList<>(Collections.singletonList(rule("fuel", 10)));
+        autoTrade.setRules(rules);
+        autoTrade.getRules();
+        
+        rules.get(0).itemId = "supplies";
+        autoTrade.rulesChanged();
+        assertRules(autoTrade.getRules(), "supplies", 10, "fuel", 100);
+    }
+    
+    @Test
+    public void followsRulesReplacedInPlace() {
+        List<AutoTrade.ItemTradeRule> rules = new ArrayList<>(Collections.singletonList(rule("fuel", 10)));
+        autoTrade.setRules(rules);
+        autoTrade.getRules();
+        
+        rules.set(0, rule("supplies", 20));
+        autoTrade.setRules(rules);
+        assertRules(autoTrade.getRules(), "supplies", 20, "fuel", 100);
+    }
+    
+    private static AutoTrade.ItemTradeRule rule(String itemId, int demand) {
+        AutoTrade.ItemTradeRule rule = new AutoTrade.ItemTradeRule();
+        rule.itemId = itemId;
+        rule.demand = demand;
+        return rule;
+    }
+    
+    private static void assertRules(List<AutoTrade.ItemTradeRule> rules, Object... expected) {
+        assertEquals(expected.length / 2, rules.size());
+        for ( int i = 0; i < rules.size(); i++ ) {
+            assertEquals(expected[2 * i], rules.get(i).itemId);
+            assertEquals(((Integer)expected[2 * i + 1]).intValue(), rules.get(i).demand);
+        }
+    }
+}
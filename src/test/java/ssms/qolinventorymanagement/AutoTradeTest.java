@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import com.fs.starfarer.api.campaign.CampaignUIAPI;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
+import com.fs.starfarer.api.campaign.SectorEntityToken;
+import com.fs.starfarer.api.campaign.econ.MarketAPI;
+import com.fs.starfarer.api.campaign.econ.SubmarketAPI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import ssms.qol.util.UtilItems;
+
+/**
+ * Snapshots taken by auto trade at a market whose open market does not buy from the player.
+ *
+ * @author Malte Schulze
+ */
+public class AutoTradeTest {
+    protected AutoTrade autoTrade;
+    protected DockSnapshot dock;
+    protected String laser;
+    
+    @Before
+    public void setup() {
+        Fakes.installSettings(Collections.<String>emptyList(), "single_bp");
+        CargoStackAPI stack = Fakes.weapon("laser", 5);
+        List<CargoStackAPI> fleet = new ArrayList<>();
+        fleet.add(stack);
+        laser = UtilItems.getInstance().getItemId(stack).uniqueId;
+        
+        Map<String,SubmarketAPI> submarkets = new HashMap<>();
+        MarketAPI market = Fakes.market("market", submarkets);
+        submarkets.put("storage", Fakes.submarket("storage", Fakes.cargo(new ArrayList<CargoStackAPI>()), market));
+        submarkets.put("open_market", Fakes.submarket("open_market", Fakes.cargo(new ArrayList<CargoStackAPI>()), market, true));
+        submarkets.put("generic_military", Fakes.submarket("generic_military", Fakes.cargo(new ArrayList<CargoStackAPI>()), market));
+        Fakes.installSector(Fakes.cargo(fleet), Fakes.faction("player", new HashSet<>(Collections.singleton("laser"))));
+        SectorEntityToken target = Fakes.entity("station", market);
+        dock = new DockSnapshot(target, CampaignUIAPI.CoreUITradeMode.OPEN, false, new DockMetrics());
+        
+        autoTrade = new AutoTrade();
+        autoTrade.rules = new ArrayList<>();
+    }
+    
+    @Test
+    public void sellableOnlyWhereNotIllegal() {
+        AutoTrade.ItemTradeRule rule = new AutoTrade.ItemTradeRule();
+        rule.itemId = laser;
+        rule.demand = 0;
+        autoTrade.rules.add(rule);
+        
+        TradeSnapshot snapshot = autoTrade.snapshot(dock, new PriceCache(dock.metrics));
+        int item = snapshot.findItem(laser);
+        assertFalse(snapshot.isSellableAt(item, TradeSnapshot.PRIMARY));
+        assertTrue(snapshot.isSellableAt(item, TradeSnapshot.SECONDARY));
+        assertTrue(snapshot.isSellableAt(item, TradeSnapshot.STORAGE));
+        assertFalse(snapshot.isSellableAt(item, TradeSnapshot.STOCKPILE));
+        
+        List<TradePlan.Order> orders = new TradePlanner().plan(snapshot).getOrders();
+        assertEquals(1, orders.size());
+        assertEquals(TradePlan.OrderType.SALE, orders.get(0).type);
+        assertEquals(TradeSnapshot.SECONDARY, orders.get(0).venue);
+    }
+    
+    @Test
+    public void sellsKnownWeaponsWhereNotIllegal() {
+        autoTrade.sellKnownWeapons = true;
+        dock.setKnownWeapons(new KnownWeapons().update(Fakes.faction("player", Collections.singleton("laser"))));
+        
+        TradeSnapshot snapshot = autoTrade.snapshot(dock, new PriceCache(dock.metrics));
+        List<TradePlan.Order> orders = new TradePlanner().plan(snapshot).getOrders();
+        assertEquals(1, orders.size());
+        assertEquals(TradePlan.OrderType.WEAPON_SALE, orders.get(0).type);
+        assertEquals(TradeSnapshot.SECONDARY, orders.get(0).venue);
+        assertEquals(5f, orders.get(0).quantity, 0f);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import com.fs.starfarer.api.campaign.CampaignUIAPI;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
+import com.fs.starfarer.api.campaign.SectorEntityToken;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Prepared docks must only match the cargos they were planned for.
+ *
+ * @author Malte Schulze
+ */
+public class DockPlanTest {
+    protected final List<CargoStackAPI> fleet = new ArrayList<>();
+    protected SectorEntityToken target;
+    protected DockPlan plan;
+    
+    @Before
+    public void setup() {
+        fleet.add(Fakes.weapon("a", 2));
+        fleet.add(Fakes.weapon("b", 1));
+        target = Fakes.installDock(Fakes.cargo(fleet), Fakes.cargo(new ArrayList<CargoStackAPI>()), 
+                Fakes.faction("player", new HashSet<String>()));
+        plan = new DockPlan(target, CampaignUIAPI.CoreUITradeMode.OPEN, live().fingerprint(), 0);
+    }
+    
+    @Test
+    public void matchesUnchangedCargo() {
+        assertTrue(plan.matches(target, CampaignUIAPI.CoreUITradeMode.OPEN, live().fingerprint(), 0));
+    }
+    
+    @Test
+    public void rejectsCargoWithSwappedSizes() {
+        fleet.set(0, Fakes.weapon("a", 1));
+        fleet.set(1, Fakes.weapon("b", 2));
+        assertFalse(plan.matches(target, CampaignUIAPI.CoreUITradeMode.OPEN, live().fingerprint(), 0));
+    }
+    
+    private DockSnapshot live() {
+        return new DockSnapshot(target, CampaignUIAPI.CoreUITradeMode.OPEN, false, new DockMetrics());
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import com.fs.starfarer.api.campaign.CargoAPI;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * Fingerprints of cargos that skipped stages and prepared docks rely on.
+ *
+ * @author Malte Schulze
+ */
+public class DockSnapshotTest {
+    @Test
+    public void ignoresStackOrder() {
+        assertEquals(DockSnapshot.fingerprint(cargo(Fakes.weapon("a", 2), Fakes.weapon("b", 1))), 
+                DockSnapshot.fingerprint(cargo(Fakes.weapon("b", 1), Fakes.weapon("a", 2))));
+    }
+    
+    @Test
+    public void changesWhenSizesAreSwapped() {
+        assertNotEquals(DockSnapshot.fingerprint(cargo(Fakes.weapon("a", 2), Fakes.weapon("b", 1))), 
+                DockSnapshot.fingerprint(cargo(Fakes.weapon("a", 1), Fakes.weapon("b", 2))));
+    }
+    
+    @Test
+    public void changesWhenSizesAreSwappedBetweenTypes() {
+        assertNotEquals(DockSnapshot.fingerprint(cargo(Fakes.weapon("a", 3), Fakes.special("weapon_bp", "a", 1))), 
+                DockSnapshot.fingerprint(cargo(Fakes.weapon("a", 1), Fakes.special("weapon_bp", "a", 3))));
+    }
+    
+    private static CargoAPI cargo(CargoStackAPI... stacks) {
+        return Fakes.cargo(new ArrayList<>(Arrays.asList(stacks)));
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import java.util.Collections;
+import org.junit.Test;
+import ssms.qol.util.UtilItems;
+
+/**
+ * Rule labels are memoized for the menu, each edit of a rule produces a new one.
+ *
+ * @author Malte Schulze
+ */
+public class ItemCatalogueTest {
+    protected final ItemCatalogue catalogue = new ItemCatalogue(Collections.<UtilItems.ItemId>emptyList());
+    
+    @Test
+    public void reusesTheLabelOfAnUnchangedRule() {
+        assertSame(catalogue.getRuleLabel("laser", 2, 10f, 5f), catalogue.getRuleLabel("laser", 2, 10f, 5f));
+    }
+    
+    @Test
+    public void keepsOnlyRecentRuleLabels() {
+        int edits = ItemCatalogue.RULE_LABELS * 4;
+        for ( int demand = 0; demand < edits; demand++ ) {
+            catalogue.getRuleLabel("laser", demand, 10f, 5f);
+        }
+        assertEquals(ItemCatalogue.RULE_LABELS, catalogue.ruleLabels.size());
+        assertEquals("laser, =" + (edits - 1) + " >10.0 <5.0", catalogue.getRuleLabel("laser", edits - 1, 10f, 5f));
+    }
+}
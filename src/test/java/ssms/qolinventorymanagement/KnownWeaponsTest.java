@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import com.fs.starfarer.api.campaign.FactionAPI;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * When the snapshot of known weapons notices learned and forgotten blueprints.
+ *
+ * @author Malte Schulze
+ */
+public class KnownWeaponsTest {
+    protected final Set<String> weapons = new LinkedHashSet<>(Arrays.asList("laser", "cannon"));
+    protected final FactionAPI faction = Fakes.faction("player", weapons);
+    protected KnownWeapons known;
+    
+    @Before
+    public void setup() {
+        known = new KnownWeapons().update(faction, 0);
+    }
+    
+    @Test
+    public void noticesLearnedWeaponsRightAway() {
+        int revision = known.getRevision();
+        weapons.add("railgun");
+        known.update(faction, 0);
+        assertTrue(known.knows("railgun"));
+        assertEquals(revision + 1, known.getRevision());
+    }
+    
+    @Test
+    public void noticesSwappedWeaponsOnceTheEconomyTicked() {
+        weapons.remove("laser");
+        weapons.add("railgun");
+        known.update(faction, 0);
+        assertTrue(known.knows("laser"));
+        
+        known.update(faction, 1);
+        assertFalse(known.knows("laser"));
+        assertTrue(known.knows("railgun"));
+    }
+    
+    @Test
+    public void keepsRevisionWhileUnchanged() {
+        int revision = known.getRevision();
+        known.update(faction, 1);
+        known.update(faction, 2);
+        assertEquals(revision, known.getRevision());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import ssms.qol.util.UtilItems;
+
+/**
+ * The storage policy has to follow edits of the configured items.
+ *
+ * @author Malte Schulze
+ */
+public class SafeStorageTest {
+    protected final CargoStackAPI laser = Fakes.weapon("laser", 1);
+    protected final CargoStackAPI cannon = Fakes.weapon("cannon", 1);
+    protected final ItemIdCache items = new ItemIdCache(new DockMetrics());
+    protected SafeStorage safeStorage;
+    
+    @Before
+    public void setup() {
+        Fakes.installSettings(Collections.<String>emptyList(), "single_bp");
+        safeStorage = new SafeStorage();
+        safeStorage.storeAllRecipes = false;
+    }
+    
+    @Test
+    public void followsItemsEditedInPlace() {
+        List<String> itemsToStore = new ArrayList<>();
+        itemsToStore.add(UtilItems.getInstance().getItemId(laser).uniqueId);
+        safeStorage.setItemsToStore(itemsToStore);
+        assertTrue(safeStorage.getMatcher().matches(laser, items));
+        
+        itemsToStore.set(0, UtilItems.getInstance().getItemId(cannon).uniqueId);
+        safeStorage.setItemsToStore(itemsToStore);
+        assertFalse(safeStorage.getMatcher().matches(laser, items));
+        assertTrue(safeStorage.getMatcher().matches(cannon, items));
+    }
+    
+    @Test
+    public void keepsStorageIdsUntilTheMarketsChange() {
+        List<String> entityIds = new ArrayList<>(Arrays.asList("a", "b"));
+        safeStorage.setEntityIds(entityIds);
+        assertSame(safeStorage.getStorageIds(), safeStorage.getStorageIds());
+        
+        Set<String> before = safeStorage.getStorageIds();
+        entityIds.set(0, "c");
+        safeStorage.setEntityIds(entityIds);
+        assertNotSame(before, safeStorage.getStorageIds());
+        assertTrue(safeStorage.getStorageIds().contains("c"));
+    }
+}
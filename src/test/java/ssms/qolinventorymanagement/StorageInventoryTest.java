@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The menu checks the index on every rendered field, it may only do work when the configured storages changed.
+ *
+ * @author Malte Schulze
+ */
+public class StorageInventoryTest {
+    protected final ItemIdCache items = new ItemIdCache(new DockMetrics());
+    protected StorageInventory inventory;
+    
+    @Before
+    public void setup() {
+        inventory = new StorageInventory();
+        inventory.index("a", Fakes.cargo(new ArrayList<CargoStackAPI>()), items);
+        inventory.index("b", Fakes.cargo(new ArrayList<CargoStackAPI>()), items);
+        inventory.add("b", "laser", 2f);
+    }
+    
+    @Test
+    public void dropsStoragesNoLongerConfigured() {
+        inventory.ensureIndexed(storages("a"));
+        assertTrue(inventory.isIndexed("a"));
+        assertFalse(inventory.isIndexed("b"));
+        assertEquals(0f, inventory.getTotal("laser"), 0f);
+    }
+    
+    @Test
+    public void skipsTheSameConfiguredStoragesOnceIndexed() {
+        Set<String> configured = storages("a", "b");
+        inventory.ensureIndexed(configured);
+        //not configured, only dropped if the storages are looked at again
+        inventory.index("c", Fakes.cargo(new ArrayList<CargoStackAPI>()), items);
+        inventory.ensureIndexed(configured);
+        assertTrue(inventory.isIndexed("c"));
+        inventory.ensureIndexed(storages("a", "b"));
+        assertFalse(inventory.isIndexed("c"));
+        assertEquals(2f, inventory.getTotal("laser"), 0f);
+    }
+    
+    @Test
+    public void checksAgainAfterAStorageWasRemoved() {
+        Set<String> configured = storages("a", "b");
+        inventory.ensureIndexed(configured);
+        inventory.remove("b");
+        inventory.index("b", Fakes.cargo(new ArrayList<CargoStackAPI>()), items);
+        inventory.index("c", Fakes.cargo(new ArrayList<CargoStackAPI>()), items);
+        inventory.ensureIndexed(configured);
+        assertFalse(inventory.isIndexed("c"));
+    }
+    
+    private static Set<String> storages(String... entityIds) {
+        return new HashSet<>(Arrays.asList(entityIds));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2020 Malte Schulze.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library;  If not, see
+ * <https://www.gnu.org/licenses/>.
+ */
+package ssms.qolinventorymanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Plans made from hand built snapshots. Venues are given as bitmasks the way {@link AutoTrade} fills them in.
+ *
+ * @author Malte Schulze
+ */
+public class TradePlannerTest {
+    private static final int PRIMARY = 1 << TradeSnapshot.PRIMARY;
+    private static final int SECONDARY = 1 << TradeSnapshot.SECONDARY;
+    private static final int STORAGE = 1 << TradeSnapshot.STORAGE;
+    
+    protected TradeSnapshot snapshot;
+    protected final TradePlanner planner = new TradePlanner();
+    
+    @Before
+    public void setup() {
+        snapshot = new TradeSnapshot();
+        snapshot.reset(false);
+    }
+    
+    @Test
+    public void buysCheapestOffersUpToDemand() {
+        snapshot.addRule("fuel", 10, 100f);
+        snapshot.addFleetItem(snapshot.item("fuel"), 4, false, PRIMARY, null);
+        snapshot.markShortages();
+        snapshot.addOffer(snapshot.item("fuel"), TradeSnapshot.PRIMARY, 3, 80f, null);
+        snapshot.addOffer(snapshot.item("fuel"), TradeSnapshot.SECONDARY, 10, 50f, null);
+        snapshot.addOffer(snapshot.item("fuel"), TradeSnapshot.STORAGE, 2, 0f, null);
+        
+        List<TradePlan.Order> orders = planner.plan(snapshot).getOrders();
+        assertEquals(2, orders.size());
+        assertOrder(orders.get(0), TradePlan.OrderType.TRANSFER, "fuel", TradeSnapshot.STORAGE, 2);
+        assertOrder(orders.get(1), TradePlan.OrderType.PURCHASE, "fuel", TradeSnapshot.SECONDARY, 4);
+    }
+    
+    @Test
+    public void doesNotBuyAboveMaxBuyPrice() {
+        snapshot.addRule("fuel", 10, 60f);
+        snapshot.markShortages();
+        snapshot.addOffer(snapshot.item("fuel"), TradeSnapshot.PRIMARY, 5, 50f, null);
+        snapshot.addOffer(snapshot.item("fuel"), TradeSnapshot.SECONDARY, 5, 70f, null);
+        
+        List<TradePlan.Order> orders = planner.plan(snapshot).getOrders();
+        assertEquals(1, orders.size());
+        assertOrder(orders.get(0), TradePlan.OrderType.PURCHASE, "fuel", TradeSnapshot.PRIMARY, 5);
+    }
+    
+    @Test
+    public void leavesDemandThatIsMetAlone() {
+        snapshot.addRule("fuel", 10, 100f);
+        snapshot.addFleetItem(snapshot.item("fuel"), 10, false, PRIMARY, null);
+        snapshot.markShortages();
+        snapshot.addOffer(snapshot.item("fuel"), TradeSnapshot.PRIMARY, 5, 1f, null);
+        
+        assertTrue(planner.plan(snapshot).isEmpty());
+    }
+    
+    @Test
+    public void sellsExcessAtPrimaryFirst() {
+        snapshot.addRule("fuel", 10, 0f);
+        snapshot.addFleetItem(snapshot.item("fuel"), 15, false, PRIMARY | SECONDARY | STORAGE, null);
+        snapshot.markShortages();
+        
+        List<TradePlan.Order> orders = planner.plan(snapshot).getOrders();
+        assertEquals(1, orders.size());
+        assertOrder(orders.get(0), TradePlan.OrderType.SALE, "fuel", TradeSnapshot.PRIMARY, 5);
+    }
+    
+    @Test
+    public void sellsExcessOnlyWhereSellable() {
+        snapshot.addRule("guns", 0, 0f);
+        snapshot.addRule("drugs", 0, 0f);
+        snapshot.addRule("cores", 0, 0f);
+        snapshot.addFleetItem(snapshot.item("guns"), 3, false, SECONDARY | STORAGE, null);
+        snapshot.addFleetItem(snapshot.item("drugs"), 3, false, STORAGE, null);
+        snapshot.addFleetItem(snapshot.item("cores"), 3, false, 0, null);
+        snapshot.markShortages();
+        
+        List<TradePlan.Order> orders = planner.plan(snapshot).getOrders();
+        assertEquals(2, orders.size());
+        assertOrder(orders.get(0), TradePlan.OrderType.SALE, "guns", TradeSnapshot.SECONDARY, 3);
+        assertOrder(orders.get(1), TradePlan.OrderType.SALE, "drugs", TradeSnapshot.STORAGE, 3);
+    }
+    
+    @Test
+    public void sellsKnownWeaponsWithoutRule() {
+        snapshot.reset(true);
+        snapshot.addFleetItem(snapshot.item("laser"), 8, true, PRIMARY | SECONDARY, null);
+        snapshot.addFleetItem(snapshot.item("cannon"), 8, false, PRIMARY | SECONDARY, null);
+        snapshot.markShortages();
+        
+        List<TradePlan.Order> orders = planner.plan(snapshot).getOrders();
+        assertEquals(1, orders.size());
+        assertOrder(orders.get(0), TradePlan.OrderType.WEAPON_SALE, "laser", TradeSnapshot.PRIMARY, 8);
+    }
+    
+    @Test
+    public void keepsKnownWeaponsUpToDemand() {
+        snapshot.reset(true);
+        snapshot.addRule("laser", 3, 0f);
+        snapshot.addFleetItem(snapshot.item("laser"), 8, true, SECONDARY, null);
+        snapshot.markShortages();
+        
+        List<TradePlan.Order> orders = planner.plan(snapshot).getOrders();
+        assertEquals(1, orders.size());
+        assertOrder(orders.get(0), TradePlan.OrderType.WEAPON_SALE, "laser", TradeSnapshot.SECONDARY, 5);
+    }
+    
+    @Test
+    public void doesNotSellKnownWeaponsToStorage() {
+        snapshot.reset(true);
+        snapshot.addFleetItem(snapshot.item("laser"), 8, true, STORAGE, null);
+        snapshot.markShortages();
+        
+        assertTrue(planner.plan(snapshot).isEmpty());
+    }
+    
+    @Test
+    public void keepsKnownWeaponsWhenNotSelling() {
+        snapshot.addFleetItem(snapshot.item("laser"), 8, true, PRIMARY, null);
+        snapshot.markShortages();
+        
+        assertTrue(planner.plan(snapshot).isEmpty());
+    }
+    
+    private static void assertOrder(TradePlan.Order order, TradePlan.OrderType type, String itemId, int venue, float quantity) {
+        assertEquals(type, order.type);
+        assertEquals(itemId, order.uniqueId);
+        assertEquals(venue, order.venue);
+        assertEquals(quantity, order.quantity, 0f);
+    }
+}